@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Replacement for the deprecated AsyncTask with the same shape:
+// doInBackground() runs on a thread of the TaskExecutor pool, while
+// onProgressUpdate(), onPostExecute() and onCancelled() run on the main Looper.
+// cancel(true) interrupts the background thread, and a cancelled task
+// never delivers its progress nor its result to onPostExecute().
+// As with AsyncTask, onCancelled() is only called once doInBackground() has returned, or right away
+// if the task was cancelled before doInBackground() was invoked (it is then never invoked).
+// As with AsyncTask, an exception thrown by doInBackground() is not lost inside the FutureTask:
+// it is thrown again on the main thread, instead of calling onPostExecute() with a null result.
+public abstract class BackgroundTask<Params, Progress, Result> {
+
+    // doInBackground() has not been invoked yet
+    static private final int PENDING = 0;
+    // doInBackground() has been invoked (it may still be running)
+    static private final int INVOKED = 1;
+    // The task was cancelled first, so doInBackground() is never invoked
+    static private final int SKIPPED = 2;
+
+    // Handler associated to the UI (main) thread, shared by all the tasks
+    private static Handler mainHandler;
+
+    // Runs doInBackground() and can be cancelled
+    private final FutureTask<Result> future;
+    // Whether execute() has already been called (a task cannot be reused)
+    private final AtomicBoolean started = new AtomicBoolean();
+    // Whether the result has already been sent to the main thread
+    private final AtomicBoolean resultPosted = new AtomicBoolean();
+    // Whether doInBackground() has been invoked, decided once by the thread of the task or by cancel()
+    private final AtomicInteger invocation = new AtomicInteger(PENDING);
+
+    // Parameters received by execute()
+    private volatile Params[] params;
+    // Exception thrown by doInBackground() (null if none), delivered to the main thread
+    private volatile Throwable error;
+
+    public BackgroundTask() {
+        future = new FutureTask<Result>(() -> {
+            // Cancelled before its thread got here, so the result is posted by done()
+            if (!invocation.compareAndSet(PENDING, INVOKED)) {
+                return null;
+            }
+            Result result = null;
+            try {
+                result = doInBackground(params);
+            } catch (RuntimeException | Error e) {
+                error = e;
+            } finally {
+                postResult(result);
+            }
+            return result;
+        }) {
+            // The task may be cancelled before starting, so doInBackground() is never run.
+            // Otherwise, the result is posted once doInBackground() returns, even if cancelled
+            @Override
+            protected void done() {
+                if (invocation.get() == SKIPPED) {
+                    postResult(null);
+                }
+            }
+        };
+    }
+
+    // Runs the task on the app-wide pool of threads.
+    @SafeVarargs
+    public final BackgroundTask<Params, Progress, Result> execute(Params... params) {
+        return executeOnExecutor(TaskExecutor.get(), params);
+    }
+
+    // Runs the task on the given Executor.
+    @SafeVarargs
+    public final BackgroundTask<Params, Progress, Result> executeOnExecutor(
+            Executor executor, Params... params) {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("The task has already been executed");
+        }
+        this.params = params;
+        onPreExecute();
+        executor.execute(future);
+        return this;
+    }
+
+    // Cancels the task, interrupting its thread if required.
+    // If doInBackground() has not been invoked yet, it never will be.
+    public final boolean cancel(boolean mayInterruptIfRunning) {
+        invocation.compareAndSet(PENDING, SKIPPED);
+        return future.cancel(mayInterruptIfRunning);
+    }
+
+    public final boolean isCancelled() {
+        return (invocation.get() == SKIPPED) || future.isCancelled();
+    }
+
+    // Whether doInBackground() has been invoked (false forever if cancelled before that)
+    public final boolean hasStarted() {
+        return invocation.get() == INVOKED;
+    }
+
+    // Whether doInBackground() has finished or the task has been cancelled
+    public final boolean isDone() {
+        return future.isDone();
+    }
+
+    // Sends the progress to onProgressUpdate() on the main thread (called from doInBackground()).
+    @SafeVarargs
+    protected final void publishProgress(Progress... values) {
+        if (!isCancelled()) {
+            getMainHandler().post(() -> {
+                // The task may have been cancelled while the update was queued
+                if (!isCancelled()) {
+                    onProgressUpdate(values);
+                }
+            });
+        }
+    }
+
+    // Sends the result to onPostExecute() or onCancelled() on the main thread, only once.
+    private void postResult(Result result) {
+        if (resultPosted.compareAndSet(false, true)) {
+            getMainHandler().post(() -> {
+                final Throwable failure = error;
+                if (failure != null) {
+                    throw new RuntimeException("An error occurred while executing doInBackground()", failure);
+                }
+                if (isCancelled()) {
+                    onCancelled(result);
+                } else {
+                    onPostExecute(result);
+                }
+            });
+        }
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    // Runs on the calling thread before the task is submitted
+    protected void onPreExecute() {
+    }
+
+    // Runs on a background thread
+    @SuppressWarnings("unchecked")
+    protected abstract Result doInBackground(Params... params);
+
+    // Runs on the main thread each time publishProgress() is called
+    @SuppressWarnings("unchecked")
+    protected void onProgressUpdate(Progress... values) {
+    }
+
+    // Runs on the main thread when doInBackground() finishes and the task was not cancelled
+    protected void onPostExecute(Result result) {
+    }
+
+    // Runs on the main thread instead of onPostExecute() when the task was cancelled
+    protected void onCancelled(Result result) {
+    }
+}
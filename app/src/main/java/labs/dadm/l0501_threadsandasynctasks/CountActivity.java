@@ -0,0 +1,618 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountEngine;
+import labs.dadm.l0501_threadsandasynctasks.engine.CountState;
+import labs.dadm.l0501_threadsandasynctasks.engine.LatencyHistogram;
+import labs.dadm.l0501_threadsandasynctasks.engine.PrimeCountWork;
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressCheckpoint;
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressLabels;
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressSink;
+import labs.dadm.l0501_threadsandasynctasks.engine.SpscRingBuffer;
+import labs.dadm.l0501_threadsandasynctasks.engine.TickMetrics;
+import labs.dadm.l0501_threadsandasynctasks.engine.WorkerPool;
+
+// Displays a count using a ProgressBar and a TextView.
+// The count is executed on background by a CountEngine running on the app-wide pool of threads,
+// and each subclass only decides how the updates are notified to the UI (Message, Runnable...).
+// The count is held by a CountViewModel, so it keeps running while the activity is recreated.
+// Its progress is also saved in a memory-mapped checkpoint file, so if the process is killed
+// in the middle of a count, the next launch of the activity offers to resume it.
+public abstract class CountActivity extends AppCompatActivity {
+
+    // Tag used for the log
+    static private final String TAG = "CountActivity";
+
+    // Numbers tested on each step of the CPU-bound workload
+    static private final int PRIMES_PER_STEP = 100_000;
+
+    // Labels of the progress shared by all the activities (only accessed from the UI thread)
+    private static ProgressLabels sharedLabels;
+
+    // Time from the request to stop a count to its thread exiting, for each kind of activity,
+    // so the implementations can be compared (only accessed from the UI thread)
+    private static final Map<Class<?>, LatencyHistogram> stopLatencies = new HashMap<>();
+    // Time from a value being produced to the views being updated with it, for each kind of
+    // activity and lane of the progress messages (only accessed from the UI thread)
+    private static final Map<String, LatencyHistogram> renderLatencies = new HashMap<>();
+    // Checkpoint of the count of each kind of activity, mapped once per process
+    // (the map is only accessed from the UI thread). Counts of the same kind share the file, but
+    // only the one owning the checkpoint writes it: a new count waits until the previous one has ended
+    private static final Map<Class<?>, ProgressCheckpoint> checkpoints = new HashMap<>();
+    // Kinds of activity whose checkpoint file is being mapped (only accessed from the UI thread)
+    private static final Set<Class<?>> openingCheckpoints = new HashSet<>();
+
+    // Hold references to View objects
+    ProgressBar progressBar;
+    TextView tvProgress;
+    CountProgressView progressView;
+    TextView tvStats;
+    Button bStart;
+    Button bPause;
+    Button bStop;
+
+    // Options received through the Intent
+    CountOptions options;
+    // Precomputed text of each value of the count
+    ProgressLabels labels;
+
+    // Holds the count across configuration changes
+    CountViewModel model;
+
+    // Measures the frames drawn while the count runs (null until a count is displayed)
+    private FrameTimeMonitor frameMonitor;
+    // Duration of the frames of the last count, reused each time they are displayed
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+    // Asks whether to resume the count saved in the checkpoint (null when not displayed)
+    private AlertDialog resumeDialog;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_test_problem);
+
+        // Keep a reference to:
+        // the ProgressBar displaying the current progress of the count (init 0, max 100)
+        // the TextView displaying the progress of the count in text format (x/100)
+        // the TextView displaying the metrics of the last count
+        // the Buttons to start, pause/continue and stop the count
+        progressBar = findViewById(R.id.pbProgress);
+        tvProgress = findViewById(R.id.tvProgress);
+        progressView = findViewById(R.id.cpvProgress);
+        tvStats = findViewById(R.id.tvStats);
+        bStart = findViewById(R.id.bStart);
+        bPause = findViewById(R.id.bPause);
+        bStop = findViewById(R.id.bStop);
+
+        findViewById(R.id.bStart).setOnClickListener(v -> startCount(0));
+        findViewById(R.id.bPause).setOnClickListener(v -> pauseCount());
+        findViewById(R.id.bStop).setOnClickListener(v -> stopCount());
+
+        // Detect any message blocking the UI thread, if requested
+        MainThreadWatchdog.installIfRequested(getIntent());
+
+        options = CountOptions.fromIntent(getIntent());
+        progressBar.setMax(options.getMaxCount());
+        labels = getLabels(getResources().getString(R.string.progress),
+                options.getMaxCount(), options.getReportEvery());
+        if (options.getProgressDisplay() == CountOptions.ProgressDisplay.COMBINED) {
+            // A single view draws the bar and the label, so no layout pass is needed on each tick
+            progressView.setLabels(labels);
+            progressView.setVisibility(View.VISIBLE);
+            progressBar.setVisibility(View.GONE);
+            tvProgress.setVisibility(View.GONE);
+        }
+
+        // Attach to the count started by a previous instance of this activity, if any
+        model = new ViewModelProvider(this).get(CountViewModel.class);
+        model.attach(this);
+        if (model.engine == null) {
+            // Set the initial value of the count to 0
+            showProgress(0);
+            // A previous process may have been killed in the middle of a count
+            offerResume();
+        } else {
+            restoreCount();
+        }
+    }
+
+    // Displays the count started before the activity was recreated, without restarting it
+    private void restoreCount() {
+        // Pick up at the value reached while no activity was attached
+        showProgress(model.engine.getCurrentProgress());
+
+        if (!isWorkerRunning()) {
+            // The count ended while the activity was being recreated
+            finishCount();
+        } else {
+            // The count is still running, paused or stopping
+            final boolean stopping = model.engine.getState() == CountState.STOPPING;
+            bStart.setEnabled(false);
+            bPause.setEnabled(!stopping);
+            bStop.setEnabled(!stopping);
+            bPause.setText(model.engine.isPaused()
+                    ? R.string.continue_button : R.string.pause_button);
+            // Measure the frames of the new window for the rest of the count
+            startFrameMonitor();
+        }
+    }
+
+    // Offers to resume the count saved in the checkpoint of this activity, if any, once per model
+    // (the dialog is displayed again if the activity is recreated before answering it).
+    // The first time, the checkpoint is mapped in background and the offer is made once it is.
+    private void offerResume() {
+        if (model.resumeOffered || (options.getCheckpointEvery() == 0)) {
+            return;
+        }
+        final ProgressCheckpoint checkpoint = checkpoints.get(getClass());
+        if (checkpoint == null) {
+            openCheckpoint();
+            return;
+        }
+        final ProgressCheckpoint.Record record = checkpoint.read();
+        // Only a count of the same length can be resumed
+        if ((record == null) || (record.maxCount != options.getMaxCount())
+                || (record.progress <= 0) || (record.progress >= record.maxCount)) {
+            model.resumeOffered = true;
+            return;
+        }
+        showProgress(record.progress);
+        resumeDialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.resume_title)
+                .setMessage(getString(R.string.resume_message, record.progress, record.maxCount))
+                .setPositiveButton(R.string.resume_button, (dialog, which) -> {
+                    model.resumeOffered = true;
+                    startCount(record.progress);
+                })
+                .setNegativeButton(R.string.discard_button, (dialog, which) -> {
+                    model.resumeOffered = true;
+                    // A count of another activity of this kind may be writing it
+                    if (checkpoint.acquire(this)) {
+                        checkpoint.clear();
+                        checkpoint.release(this);
+                    }
+                    showProgress(0);
+                })
+                .setOnCancelListener(dialog -> {
+                    // Keep the checkpoint, so it is offered again on the next launch
+                    model.resumeOffered = true;
+                    showProgress(0);
+                })
+                .show();
+    }
+
+    // Maps the checkpoint file of this kind of activity on the app-wide pool of threads, as it
+    // performs disk I/O, then offers to resume the count saved from the UI thread, through the
+    // activity displaying the count by then. If it cannot be mapped, the counts run without checkpoints.
+    private void openCheckpoint() {
+        final Class<?> kind = getClass();
+        if (!openingCheckpoints.add(kind)) {
+            // Already being mapped for another activity of this kind
+            return;
+        }
+        final Context context = getApplicationContext();
+        final CountViewModel model = this.model;
+        try {
+            TaskExecutor.get().execute(() -> {
+                final File file = new File(context.getFilesDir(), "checkpoint-" + kind.getSimpleName());
+                ProgressCheckpoint opened = null;
+                try {
+                    opened = ProgressCheckpoint.open(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot map " + file + ", counts will run without checkpoints", e);
+                }
+                final ProgressCheckpoint checkpoint = opened;
+                model.post(() -> onCheckpointOpened(kind, checkpoint, model));
+            });
+        } catch (RejectedExecutionException e) {
+            // The pool is full of counts, so try again with the next activity of this kind
+            openingCheckpoints.remove(kind);
+            Log.w(TAG, "Cannot map the checkpoint of " + kind.getSimpleName() + " now", e);
+        }
+    }
+
+    // Keeps the checkpoint mapped (null if it could not be) and, unless a count has already been
+    // started meanwhile, offers to resume it (called from the UI thread).
+    private static void onCheckpointOpened(Class<?> kind, ProgressCheckpoint checkpoint,
+                                           CountViewModel model) {
+        openingCheckpoints.remove(kind);
+        if (checkpoint == null) {
+            model.resumeOffered = true;
+            return;
+        }
+        checkpoints.put(kind, checkpoint);
+        final CountActivity activity = model.getActivity();
+        if ((activity != null) && (model.engine == null)) {
+            activity.offerResume();
+        }
+    }
+
+    // Forgets the state shared by the activities of the process (labels, latencies and checkpoints),
+    // so each test starts as a new process would (only for tests, called from the UI thread).
+    static void resetSharedState() {
+        sharedLabels = null;
+        stopLatencies.clear();
+        renderLatencies.clear();
+        checkpoints.clear();
+        openingCheckpoints.clear();
+    }
+
+    // Returns the labels of the values notified every given steps for the given format and maximum
+    // count in the current locale, formatting them only when no previous activity did it already.
+    static ProgressLabels getLabels(String format, int maxCount, int reportEvery) {
+        final Locale locale = Locale.getDefault();
+        if ((sharedLabels == null) || !sharedLabels.matches(format, locale, maxCount, reportEvery)) {
+            sharedLabels = new ProgressLabels(format, locale, maxCount, reportEvery).prefill();
+        }
+        return sharedLabels;
+    }
+
+    // Returns the object notifying the UI about the progress from the background thread.
+    protected abstract ProgressSink createProgressSink();
+
+    // Runs the count in background (on the app-wide pool of threads by default, so no Thread
+    // is created on each start). Throws RejectedExecutionException if the pool is full.
+    protected void startWorker(CountEngine engine) {
+        TaskExecutor.get().execute(engine);
+    }
+
+    // Releases the background work once the count has been requested to stop (nothing by default,
+    // as the thread of the pool is released when the count ends). It must never block the UI thread.
+    protected void stopWorker() {
+    }
+
+    // Whether the background work is still running.
+    protected boolean isWorkerRunning() {
+        return (model.engine != null) && (model.engine.getState() != CountState.FINISHED);
+    }
+
+    // Handles the event to start the count from the given value (0 unless resuming a checkpoint).
+    void startCount(int startProgress) {
+        // The count starts, so disable the start button and enable the other two
+        bStart.setEnabled(false);
+        bPause.setEnabled(true);
+        bStop.setEnabled(true);
+        // Hide the metrics of the previous count
+        tvStats.setVisibility(View.GONE);
+        model.renderLatency.reset();
+        model.statsRecorded = false;
+        showProgress(startProgress);
+        startFrameMonitor();
+
+        // Decide how the progress reaches the UI
+        ProgressSink sink = createProgressSink();
+        if (options.getDispatch() == CountOptions.Dispatch.FRAME) {
+            // Replace the strategy of the activity with one update per frame
+            model.frameDispatcher = new FrameProgressDispatcher(model.uiSink);
+            sink = model.frameDispatcher;
+        } else if (options.getDispatch() == CountOptions.Dispatch.RING) {
+            // Replace the strategy of the activity with a ring buffer drained on each wakeup
+            model.ringDispatcher = new RingProgressDispatcher(model.uiSink, options.getBackpressure());
+            sink = model.ringDispatcher;
+        }
+
+        // Each step either waits one interval or counts the primes of a range on all the cores
+        model.work = (options.getWorkload() == CountOptions.Workload.PRIMES)
+                ? new PrimeCountWork(TaskExecutor.getComputePool(), progressBar.getMax(), PRIMES_PER_STEP)
+                : null;
+
+        // Create new count and run it in background
+        final CountEngine.Builder builder = new CountEngine.Builder(sink)
+                .maxCount(options.getMaxCount())
+                .intervalMs(options.getIntervalMs())
+                .reportEvery(options.getReportEvery())
+                .fixedRate(options.getFixedRatePolicy())
+                .work(model.work)
+                .clock(TaskExecutor.getClock())
+                .startAt(startProgress);
+        // Save the progress every few steps, so the count can be resumed if the process is killed
+        // (a count started before the checkpoint has been mapped runs without it)
+        final ProgressCheckpoint checkpoint = (options.getCheckpointEvery() > 0)
+                ? checkpoints.get(getClass()) : null;
+        if (checkpoint != null) {
+            builder.checkpoint(checkpoint, options.getCheckpointEvery());
+        }
+        final CountEngine engine = builder.build();
+        model.engine = engine;
+        try {
+            startWorker(engine);
+        } catch (RejectedExecutionException e) {
+            // Too many counts are running or waiting in the app-wide pool
+            Toast.makeText(this, R.string.pool_full, Toast.LENGTH_SHORT).show();
+            engine.stop();
+            model.engine = null;
+            model.frameDispatcher = null;
+            model.ringDispatcher = null;
+            resetButtons();
+        }
+    }
+
+    // Handles the event to pause/resume the count.
+    void pauseCount() {
+        final CountEngine engine = model.engine;
+        // Pause/Resume the count (nothing changes if it has just ended)
+        if (!engine.resume()) {
+            engine.pause();
+        }
+
+        // Change the text of the button depending on the state of the count
+        if (engine.isPaused()) {
+            // Count is paused, so display Continue text
+            bPause.setText(R.string.continue_button);
+        } else {
+            // Count is running, so display Pause text
+            bPause.setText(R.string.pause_button);
+        }
+    }
+
+    // Handles the event to stop the count.
+    void stopCount() {
+        // The count is stopping, so disable the pause and stop buttons
+        bPause.setEnabled(false);
+        bStop.setEnabled(false);
+
+        // Stop the count without waiting for the background thread to die (no join()),
+        // the UI is reset once the thread notifies that the count has ended
+        // (through the model, as the activity may have been recreated by then)
+        model.engine.stopAsync(model::notifyStopped);
+        stopWorker();
+    }
+
+    // Updates the ProgressBar and the TextView with the new value
+    public void updateCount(int count) {
+        showProgress(count);
+
+        // Measure how long the value took to reach the views
+        final long produced = model.engine.getProducedNanos(count);
+        if (produced != -1) {
+            model.renderLatency.record(model.engine.getClock().nanoTime() - produced);
+        }
+    }
+
+    private void showProgress(int count) {
+        if (options.getProgressDisplay() == CountOptions.ProgressDisplay.COMBINED) {
+            // Only invalidates the view, its bounds never change
+            progressView.setProgress(count);
+            return;
+        }
+        progressBar.setProgress(count);
+        // The label is taken from the cache, so no String is formatted on the UI thread
+        tvProgress.setText(labels.get(count));
+    }
+
+    // Measures the frames drawn from now on, replacing any previous measurement
+    private void startFrameMonitor() {
+        stopFrameMonitor();
+        frameMonitor = new FrameTimeMonitor(getWindow());
+        frameMonitor.start();
+    }
+
+    private void stopFrameMonitor() {
+        if (frameMonitor != null) {
+            frameMonitor.stop();
+        }
+    }
+
+    // Sets the UI to its initial state
+    public void finishCount() {
+        // A late notification of a previous count (e.g. one stopped twice) never resets the running one
+        if (isWorkerRunning()) {
+            return;
+        }
+        resetButtons();
+
+        // Stop delivering one update per frame
+        if (model.frameDispatcher != null) {
+            model.frameDispatcher.cancel();
+            // A value still waiting for the next frame is not lost
+            updateCount(model.engine.getCurrentProgress());
+        }
+        // Stop draining the ring buffer
+        if (model.ringDispatcher != null) {
+            model.ringDispatcher.cancel();
+            // Values still in the ring are not lost
+            updateCount(model.engine.getCurrentProgress());
+        }
+
+        showStats();
+        model.frameDispatcher = null;
+        model.ringDispatcher = null;
+    }
+
+    // Sets the Buttons to their initial state
+    private void resetButtons() {
+        // Display the Pause text
+        bPause.setText(R.string.pause_button);
+        // The count has ended, so enable the start button and disable the other two
+        bStart.setEnabled(true);
+        bPause.setEnabled(false);
+        bStop.setEnabled(false);
+    }
+
+    // Displays the metrics of the count that has just ended
+    private void showStats() {
+        final StringBuilder stats = new StringBuilder();
+
+        // How fast the count ran, and how many of its values reached the UI
+        final CountEngine engine = model.engine;
+        stats.append(getString(R.string.throughput_stats,
+                engine.getCurrentProgress(), engine.getElapsedNanos() / 1e9,
+                engine.getThroughput(), engine.getReportEvery()));
+
+        // How regular the ticks of the count were (a count without interval has no schedule)
+        final TickMetrics ticks = engine.getTickMetrics();
+        if (ticks.getTicks() > 0) {
+            stats.append('\n').append(getString(R.string.tick_stats,
+                    toMillis(ticks.getDriftNanos()),
+                    toMillis(ticks.getMeanJitterNanos()),
+                    toMillis(ticks.getMaxJitterNanos()),
+                    ticks.getSkippedTicks()));
+        }
+
+        // How long the values took to reach the views
+        final LatencyHistogram renderLatency = model.renderLatency;
+        stats.append('\n').append(getString(R.string.latency_stats,
+                toMillis(renderLatency.getPercentile(50)),
+                toMillis(renderLatency.getPercentile(99)),
+                toMillis(renderLatency.getMax()),
+                renderLatency.getTotalCount()));
+
+        // How long the values took to reach the views in all the counts of this activity and lane
+        final String lane = getClass().getSimpleName() + "/" + options.getLane().name();
+        final LatencyHistogram laneLatency = getHistogram(renderLatencies, lane);
+        if (!model.statsRecorded) {
+            laneLatency.add(renderLatency);
+        }
+        stats.append('\n').append(getString(R.string.lane_stats, lane,
+                toMillis(laneLatency.getPercentile(50)),
+                toMillis(laneLatency.getPercentile(99)),
+                toMillis(laneLatency.getMax()),
+                laneLatency.getTotalCount()));
+
+        // How many layout passes and how long the frames took while the count was displayed
+        if (frameMonitor != null) {
+            stopFrameMonitor();
+            final String display = options.getProgressDisplay().name();
+            if (FrameTimeMonitor.isFrameTimeAvailable()) {
+                frameMonitor.copyFrameTimes(frameTimes);
+                stats.append('\n').append(getString(R.string.frame_time_stats, display,
+                        frameMonitor.getLayoutPasses(), frameTimes.getTotalCount(),
+                        frameMonitor.getFramesWithLayout(),
+                        toMillis(frameTimes.getPercentile(50)),
+                        toMillis(frameTimes.getPercentile(99)),
+                        toMillis(frameTimes.getMax())));
+            } else {
+                stats.append('\n').append(getString(R.string.layout_stats, display,
+                        frameMonitor.getLayoutPasses()));
+            }
+            frameMonitor = null;
+        }
+
+        // How many updates were coalesced when delivering one update per frame
+        final FrameProgressDispatcher frameDispatcher = model.frameDispatcher;
+        if (frameDispatcher != null) {
+            stats.append('\n').append(getString(R.string.frame_stats,
+                    frameDispatcher.getPublished(), frameDispatcher.getCoalesced()));
+        }
+
+        // How the ring buffer coped with the pace of the count
+        final RingProgressDispatcher ringDispatcher = model.ringDispatcher;
+        if (ringDispatcher != null) {
+            final SpscRingBuffer ring = ringDispatcher.getRing();
+            stats.append('\n').append(getString(R.string.ring_stats,
+                    ring.getPolicy().name(), ring.getCapacity(),
+                    ring.getOffered(), ring.getDelivered(), ring.getWakeups(),
+                    ring.getDropped(), ring.getConflated(), ring.getBlocked()));
+        }
+
+        // How fast the CPU-bound work ran on all the cores
+        final PrimeCountWork work = model.work;
+        if (work != null) {
+            stats.append('\n').append(getString(R.string.work_stats,
+                    work.getPrimesFound(), work.getNumbersTested(),
+                    work.getThroughput() / 1e6, work.getParallelism()));
+        }
+
+        // How long the count took to stop once requested, compared to previous counts of this activity
+        final long stopLatency = model.engine.getStopLatencyNanos();
+        if (stopLatency != -1) {
+            final LatencyHistogram latencies = getHistogram(stopLatencies, getClass());
+            if (!model.statsRecorded) {
+                latencies.record(stopLatency);
+            }
+            stats.append('\n').append(getString(R.string.stop_stats,
+                    toMillis(stopLatency), getClass().getSimpleName(),
+                    toMillis(latencies.getPercentile(50)),
+                    toMillis(latencies.getMax()),
+                    latencies.getTotalCount()));
+        }
+
+        // How long the count took to run again once resumed, and whether it woke up while paused
+        final long resumeLatency = engine.getLastResumeLatencyNanos();
+        if (resumeLatency != -1) {
+            stats.append('\n').append(getString(R.string.resume_stats,
+                    toMillis(resumeLatency), toMillis(engine.getMaxResumeLatencyNanos()),
+                    engine.getPausedWakeups()));
+        }
+
+        // How busy the app-wide pool of threads is
+        final WorkerPool pool = TaskExecutor.get();
+        stats.append('\n').append(getString(R.string.pool_stats,
+                pool.getActiveCount(), pool.getQueuedCount(),
+                pool.getCompletedCount(), pool.getRejectedCount()));
+
+        // How long the UI thread took to dispatch its messages (only when watched)
+        final String stallStats = MainThreadWatchdog.getStats(this);
+        if (stallStats != null) {
+            stats.append('\n').append(stallStats);
+        }
+
+        tvStats.setText(stats);
+        tvStats.setVisibility(View.VISIBLE);
+        model.statsRecorded = true;
+    }
+
+    // Returns the histogram of the given key, creating it the first time
+    private static <K> LatencyHistogram getHistogram(Map<K, LatencyHistogram> histograms, K key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(key, histogram);
+        }
+        return histogram;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // Pauses the count when the activity is going to be paused
+    @Override
+    protected void onPause() {
+        // If the count is running then pause it (unless the activity is just being recreated)
+        if (!isChangingConfigurations() && isWorkerRunning() && model.engine.pause()) {
+            bPause.setText(R.string.continue_button);
+        }
+        super.onPause();
+    }
+
+    // Stops the count when the activity is going to be destroyed for good
+    @Override
+    protected void onDestroy() {
+        model.detach(this);
+        stopFrameMonitor();
+        if (resumeDialog != null) {
+            resumeDialog.dismiss();
+        }
+        // If the count is running then stop it, unless a new activity will attach to it
+        if (!isChangingConfigurations() && isWorkerRunning()) {
+            stopCount();
+        }
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.content.Intent;
+
+import java.util.Locale;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountEngine;
+import labs.dadm.l0501_threadsandasynctasks.engine.FixedRateTicker;
+import labs.dadm.l0501_threadsandasynctasks.engine.SpscRingBuffer;
+
+// Options of a count received as Intent extras, so the same activity can be launched
+// with different configurations, e.g.:
+// adb shell am start -n labs.dadm.l0501_threadsandasynctasks/.ThreadRunnableActivity --es dispatch frame
+public class CountOptions {
+
+    // Name of the extra selecting how the progress reaches the UI
+    static public final String EXTRA_DISPATCH = "dispatch";
+    // Name of the extra selecting how the ticks of the count are paced
+    static public final String EXTRA_PACING = "pacing";
+    // Value of EXTRA_PACING sleeping one interval between increments (default)
+    static public final String PACING_SLEEP = "sleep";
+    // Name of the extra selecting what the count does on each step
+    static public final String EXTRA_WORKLOAD = "workload";
+    // Name of the extra selecting what happens when the ring buffer is full
+    static public final String EXTRA_BACKPRESSURE = "backpressure";
+    // Name of the extra selecting how the progress messages are queued on the UI thread
+    static public final String EXTRA_LANE = "lane";
+    // Name of the extra selecting the views displaying the progress
+    static public final String EXTRA_VIEW = "view";
+    // Name of the extra setting the maximum count value (int)
+    static public final String EXTRA_MAX_COUNT = "max_count";
+    // Name of the extra setting the time between two increments (int, ms)
+    static public final String EXTRA_INTERVAL = "interval";
+    // Name of the extra setting that only every n-th step is notified to the UI (int)
+    static public final String EXTRA_REPORT_EVERY = "report_every";
+    // Name of the extra setting that only each n% change is notified to the UI (int)
+    static public final String EXTRA_REPORT_PERCENT = "report_percent";
+    // Name of the extra running a count of millions of steps as fast as possible (boolean)
+    static public final String EXTRA_HEADLESS = "headless";
+    // Name of the extra setting every how many steps the progress is saved in a checkpoint (int, 0 to not save it)
+    static public final String EXTRA_CHECKPOINT_EVERY = "checkpoint_every";
+
+    // Maximum count value of a headless count, unless set through EXTRA_MAX_COUNT
+    static private final int HEADLESS_MAX_COUNT = 20_000_000;
+    // Percentage of the count notified to the UI in a headless count, unless set otherwise
+    static private final int HEADLESS_REPORT_PERCENT = 1;
+    // Maximum number of values notified to the UI in a count, whatever the granularity requested,
+    // so a long count never floods the UI thread (nor fills the cache of labels)
+    static private final int MAX_REPORTS = 10_000;
+
+    // How the progress of the count reaches the UI
+    public enum Dispatch {
+        // Strategy demonstrated by each activity (Message, Runnable, runOnUiThread()...)
+        DEFAULT,
+        // Only the latest value is kept and applied at most once per frame
+        FRAME,
+        // Same strategy as DEFAULT, without allocating any object on each tick
+        ALLOCATION_FREE,
+        // Values are written into a lock-free ring buffer drained by the UI thread on each wakeup
+        RING
+    }
+
+    // How the progress messages of ThreadMessageActivity and ThreadRunnableActivity are queued
+    public enum Lane {
+        // Ordinary messages, queued behind any other message and held by sync barriers
+        NORMAL,
+        // Asynchronous messages, not held by the sync barrier set while waiting for a frame
+        ASYNC,
+        // Messages sent to the front of the queue, ahead of any message already waiting
+        FRONT
+    }
+
+    // Views displaying the progress of the count
+    public enum ProgressDisplay {
+        // A ProgressBar and a wrap_content TextView
+        WIDGETS,
+        // A single CountProgressView drawing both, with fixed bounds
+        COMBINED
+    }
+
+    // What the count does on each step
+    public enum Workload {
+        // Wait one interval
+        SLEEP,
+        // Count the primes of a range of numbers on all the cores
+        PRIMES
+    }
+
+    // How the progress of the count reaches the UI
+    private final Dispatch dispatch;
+    // Policy of the fixed-rate schedule (null to sleep one interval between increments)
+    private final FixedRateTicker.Policy fixedRatePolicy;
+    // What the count does on each step
+    private final Workload workload;
+    // What the count does when the ring buffer is full
+    private final SpscRingBuffer.Policy backpressure;
+    // How the progress messages are queued on the UI thread
+    private final Lane lane;
+    // Views displaying the progress
+    private final ProgressDisplay progressDisplay;
+    // Maximum count value
+    private final int maxCount;
+    // Time between two increments (ms)
+    private final long intervalMs;
+    // Number of steps between two values notified to the UI
+    private final int reportEvery;
+    // The count runs as fast as possible and only reports its throughput
+    private final boolean headless;
+    // Number of steps between two checkpoints of the progress (0 to not save it)
+    private final int checkpointEvery;
+
+    CountOptions(Dispatch dispatch, FixedRateTicker.Policy fixedRatePolicy, Workload workload,
+                 SpscRingBuffer.Policy backpressure, Lane lane, ProgressDisplay progressDisplay,
+                 int maxCount, long intervalMs, int reportEvery, int reportPercent, boolean headless,
+                 int checkpointEvery) {
+        this.dispatch = dispatch;
+        this.fixedRatePolicy = fixedRatePolicy;
+        this.workload = workload;
+        this.backpressure = backpressure;
+        this.lane = lane;
+        this.progressDisplay = progressDisplay;
+        this.maxCount = Math.max(1, maxCount);
+        this.intervalMs = Math.max(0, intervalMs);
+        // The coarsest of the granularities requested and the one keeping the reports bounded
+        final long percentSteps = (long) this.maxCount * Math.max(0, Math.min(reportPercent, 100)) / 100;
+        final long boundedSteps = (this.maxCount + MAX_REPORTS - 1) / MAX_REPORTS;
+        this.reportEvery = (int) Math.max(Math.max(1, reportEvery), Math.max(percentSteps, boundedSteps));
+        this.headless = headless;
+        // By default, each value notified to the UI is also saved
+        this.checkpointEvery = (checkpointEvery < 0) ? this.reportEvery : checkpointEvery;
+    }
+
+    // Reads the options from the extras of the given Intent, using defaults for those missing.
+    static CountOptions fromIntent(Intent intent) {
+        final Dispatch dispatch = parse(Dispatch.class,
+                (intent != null) ? intent.getStringExtra(EXTRA_DISPATCH) : null, Dispatch.DEFAULT);
+        final String pacing = (intent != null) ? intent.getStringExtra(EXTRA_PACING) : null;
+        final FixedRateTicker.Policy fixedRatePolicy = PACING_SLEEP.equalsIgnoreCase(pacing)
+                ? null
+                : parse(FixedRateTicker.Policy.class, pacing, null);
+        final Workload workload = parse(Workload.class,
+                (intent != null) ? intent.getStringExtra(EXTRA_WORKLOAD) : null, Workload.SLEEP);
+        final SpscRingBuffer.Policy backpressure = parse(SpscRingBuffer.Policy.class,
+                (intent != null) ? intent.getStringExtra(EXTRA_BACKPRESSURE) : null,
+                SpscRingBuffer.Policy.CONFLATE);
+        final Lane lane = parse(Lane.class,
+                (intent != null) ? intent.getStringExtra(EXTRA_LANE) : null, Lane.NORMAL);
+        final ProgressDisplay progressDisplay = parse(ProgressDisplay.class,
+                (intent != null) ? intent.getStringExtra(EXTRA_VIEW) : null, ProgressDisplay.WIDGETS);
+        // A headless count runs millions of steps without interval, only reporting each 1%
+        final boolean headless = (intent != null) && intent.getBooleanExtra(EXTRA_HEADLESS, false);
+        final int maxCount = (intent != null)
+                ? intent.getIntExtra(EXTRA_MAX_COUNT, headless ? HEADLESS_MAX_COUNT : CountEngine.DEFAULT_MAX_COUNT)
+                : CountEngine.DEFAULT_MAX_COUNT;
+        final long intervalMs = (intent != null)
+                ? intent.getIntExtra(EXTRA_INTERVAL, headless ? 0 : (int) CountEngine.DEFAULT_INTERVAL_MS)
+                : CountEngine.DEFAULT_INTERVAL_MS;
+        final int reportEvery = (intent != null) ? intent.getIntExtra(EXTRA_REPORT_EVERY, 1) : 1;
+        final int reportPercent = (intent != null)
+                ? intent.getIntExtra(EXTRA_REPORT_PERCENT, headless ? HEADLESS_REPORT_PERCENT : 0)
+                : 0;
+        final int checkpointEvery = (intent != null) ? intent.getIntExtra(EXTRA_CHECKPOINT_EVERY, -1) : -1;
+        return new CountOptions(dispatch, fixedRatePolicy, workload, backpressure, lane,
+                progressDisplay, maxCount, intervalMs, reportEvery, reportPercent, headless, checkpointEvery);
+    }
+
+    // Returns the constant named as the given value (case insensitive), or the default value.
+    private static <T extends Enum<T>> T parse(Class<T> type, String value, T defaultValue) {
+        if (value != null) {
+            try {
+                return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return defaultValue;
+    }
+
+    public Dispatch getDispatch() {
+        return dispatch;
+    }
+
+    public FixedRateTicker.Policy getFixedRatePolicy() {
+        return fixedRatePolicy;
+    }
+
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    public SpscRingBuffer.Policy getBackpressure() {
+        return backpressure;
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public ProgressDisplay getProgressDisplay() {
+        return progressDisplay;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    // Number of steps between two values notified to the UI
+    public int getReportEvery() {
+        return reportEvery;
+    }
+
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    // Number of steps between two checkpoints of the progress (0 to not save it)
+    public int getCheckpointEvery() {
+        return checkpointEvery;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressLabels;
+
+// Draws the bar and the "x/100" label of a count by itself, replacing the ProgressBar and the
+// wrap_content TextView. Setting a different text on the TextView can change its width, which
+// requests a new layout of the whole hierarchy on the next frame. This view measures its bounds
+// once, fitting the widest label, so updating the progress only calls invalidate(): the next
+// frame redraws it without any measure or layout pass, and without allocating (the labels are
+// taken from the ProgressLabels, which are formatted in advance).
+public class CountProgressView extends View {
+
+    // Height of the bar (dp)
+    static private final float BAR_HEIGHT_DP = 4;
+    // Space between the bar and the label (dp)
+    static private final float GAP_DP = 8;
+    // Size of the label (sp), as textAppearanceLarge
+    static private final float TEXT_SIZE_SP = 22;
+    // Alpha of the part of the bar not reached yet
+    static private final int TRACK_ALPHA = 0x40;
+
+    private final Paint barPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint trackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final float barHeight;
+    private final float gap;
+
+    // Labels of each value of the count (null until set)
+    private ProgressLabels labels;
+    private int max = 100;
+    private int progress;
+
+    // Width of the widest label, so the bounds do not depend on the current one
+    private float labelWidth;
+    // Geometry of the bar and the label, computed when the size changes
+    private float barLeft;
+    private float barRight;
+    private float barTop;
+    private float barBottom;
+    private float textX;
+    private float textBaseline;
+
+    public CountProgressView(Context context) {
+        this(context, null);
+    }
+
+    public CountProgressView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        final float density = getResources().getDisplayMetrics().density;
+        final float scaledDensity = getResources().getDisplayMetrics().scaledDensity;
+        barHeight = BAR_HEIGHT_DP * density;
+        gap = GAP_DP * density;
+
+        final int accent = ContextCompat.getColor(context, R.color.colorAccent);
+        barPaint.setColor(accent);
+        trackPaint.setColor((accent & 0x00FFFFFF) | (TRACK_ALPHA << 24));
+        textPaint.setColor(Color.BLACK);
+        textPaint.setTextSize(TEXT_SIZE_SP * scaledDensity);
+        textPaint.setTextAlign(Paint.Align.RIGHT);
+    }
+
+    // Sets the labels and maximum value of the count, measuring the widest label that can be
+    // displayed (the only change that requests a new layout).
+    public void setLabels(ProgressLabels labels) {
+        this.labels = labels;
+        this.max = Math.max(1, labels.getMaxCount());
+        float widest = textPaint.measureText(labels.get(max));
+        for (long i = 0; i < max; i += labels.getStep()) {
+            widest = Math.max(widest, textPaint.measureText(labels.get((int) i)));
+        }
+        labelWidth = widest;
+        updateGeometry(getWidth(), getHeight());
+        requestLayout();
+        invalidate();
+    }
+
+    // Displays the given value, redrawing the view on the next frame without any layout pass.
+    public void setProgress(int progress) {
+        final int clamped = Math.max(0, Math.min(progress, max));
+        if (clamped != this.progress) {
+            this.progress = clamped;
+            invalidate();
+        }
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        final float textHeight = metrics.descent - metrics.ascent;
+        final int width = getPaddingLeft() + getPaddingRight() + (int) Math.ceil(labelWidth + gap) + 1;
+        final int height = getPaddingTop() + getPaddingBottom() + (int) Math.ceil(Math.max(textHeight, barHeight));
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        updateGeometry(w, h);
+    }
+
+    // Places the bar and the label within the given size
+    private void updateGeometry(int w, int h) {
+        final float contentTop = getPaddingTop();
+        final float contentBottom = h - getPaddingBottom();
+        final float centerY = (contentTop + contentBottom) / 2;
+        textX = w - getPaddingRight();
+        barLeft = getPaddingLeft();
+        barRight = Math.max(barLeft, textX - labelWidth - gap);
+        barTop = centerY - barHeight / 2;
+        barBottom = centerY + barHeight / 2;
+        // Vertically centre the label, whatever its digits
+        textBaseline = centerY - (textPaint.descent() + textPaint.ascent()) / 2;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final float reached = barLeft + (barRight - barLeft) * progress / max;
+        canvas.drawRect(reached, barTop, barRight, barBottom, trackPaint);
+        canvas.drawRect(barLeft, barTop, reached, barBottom, barPaint);
+        if (labels != null) {
+            canvas.drawText(labels.get(progress), textX, textBaseline, textPaint);
+        }
+    }
+}
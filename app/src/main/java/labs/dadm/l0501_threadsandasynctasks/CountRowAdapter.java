@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountState;
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressLabels;
+import labs.dadm.l0501_threadsandasynctasks.engine.ScheduledCount;
+
+// Binds each count of a MultiCountViewModel to a row with a ProgressBar, its text,
+// and the Buttons to start, pause/continue and stop it.
+public class CountRowAdapter extends RecyclerView.Adapter<CountRowAdapter.RowHolder> {
+
+    // Notifies that only the state of the count changed, so the row is updated in place
+    // instead of being animated as a replaced item
+    static final Object PAYLOAD_STATE = new Object();
+
+    // Buttons of each row
+    static private final int ACTION_START = 0;
+    static private final int ACTION_PAUSE = 1;
+    static private final int ACTION_STOP = 2;
+
+    // Counts displayed
+    private final MultiCountViewModel model;
+    // Precomputed text of each value of the counts
+    private final ProgressLabels labels;
+
+    CountRowAdapter(MultiCountViewModel model, ProgressLabels labels) {
+        this.model = model;
+        this.labels = labels;
+    }
+
+    @Override
+    public RowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_count, parent, false);
+        return new RowHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(RowHolder holder, int position) {
+        final ScheduledCount count = model.getCount(position);
+        final CountState state = count.getState();
+        final int progress = count.getCurrentProgress();
+
+        holder.progressBar.setMax(model.getMaxCount());
+        holder.progressBar.setProgress(progress);
+        // The label is taken from the cache, so no String is formatted on the UI thread
+        holder.tvProgress.setText(labels.get(progress));
+
+        // A count can be started again once it has ended
+        holder.bStart.setEnabled((state == CountState.IDLE) || (state == CountState.FINISHED));
+        holder.bPause.setEnabled((state == CountState.RUNNING) || (state == CountState.PAUSED));
+        holder.bStop.setEnabled(state.isActive());
+        holder.bPause.setText((state == CountState.PAUSED)
+                ? R.string.continue_button : R.string.pause_button);
+    }
+
+    @Override
+    public int getItemCount() {
+        return model.getNumberOfCounts();
+    }
+
+    // Handles the event to start the count of the given row.
+    private void startCount(int position) {
+        model.start(position);
+        notifyItemChanged(position, PAYLOAD_STATE);
+    }
+
+    // Handles the event to pause/resume the count of the given row.
+    private void pauseCount(int position) {
+        final ScheduledCount count = model.getCount(position);
+        if (!count.resume()) {
+            count.pause();
+        }
+        notifyItemChanged(position, PAYLOAD_STATE);
+    }
+
+    // Handles the event to stop the count of the given row.
+    private void stopCount(int position) {
+        model.getCount(position).stop();
+        notifyItemChanged(position, PAYLOAD_STATE);
+    }
+
+    // Holds references to the View objects of a row.
+    class RowHolder extends RecyclerView.ViewHolder {
+
+        final ProgressBar progressBar;
+        final TextView tvProgress;
+        final Button bStart;
+        final Button bPause;
+        final Button bStop;
+
+        RowHolder(View view) {
+            super(view);
+            progressBar = view.findViewById(R.id.pbProgress);
+            tvProgress = view.findViewById(R.id.tvProgress);
+            bStart = view.findViewById(R.id.bStart);
+            bPause = view.findViewById(R.id.bPause);
+            bStop = view.findViewById(R.id.bStop);
+
+            bStart.setOnClickListener(v -> onClick(ACTION_START));
+            bPause.setOnClickListener(v -> onClick(ACTION_PAUSE));
+            bStop.setOnClickListener(v -> onClick(ACTION_STOP));
+        }
+
+        private void onClick(int action) {
+            // The row may be bound to another count by now, or being removed
+            final int position = getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            switch (action) {
+                case ACTION_START:
+                    startCount(position);
+                    break;
+                case ACTION_PAUSE:
+                    pauseCount(position);
+                    break;
+                case ACTION_STOP:
+                    stopCount(position);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.ViewModel;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountEngine;
+import labs.dadm.l0501_threadsandasynctasks.engine.LatencyHistogram;
+import labs.dadm.l0501_threadsandasynctasks.engine.PrimeCountWork;
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressSink;
+
+// Keeps the count alive while the activity is recreated (e.g. when the device is rotated).
+// The background work never references the activity: the progress reaches uiSink on the UI
+// (main) thread, which forwards it to the activity currently attached, if any. The new activity
+// attaches itself in onCreate() and picks up at the value reached meanwhile.
+public class CountViewModel extends ViewModel {
+
+    // Hold a reference to the count
+    CountEngine engine;
+
+    // Delivers the progress once per frame, when selected in the options
+    FrameProgressDispatcher frameDispatcher;
+
+    // Delivers the progress through a ring buffer, when selected in the options
+    RingProgressDispatcher ringDispatcher;
+
+    // Task running the count, when it is not run directly on the app-wide pool
+    BackgroundTask<?, ?, ?> task;
+
+    // CPU-bound work performed on each step, when selected in the options
+    PrimeCountWork work;
+
+    // Time from a value being produced by the count to the views being updated with it
+    final LatencyHistogram renderLatency = new LatencyHistogram();
+
+    // The metrics of the count have already been added to those of previous counts
+    // (only accessed from the UI thread)
+    boolean statsRecorded;
+
+    // The count saved in the checkpoint has already been offered to be resumed
+    // (only accessed from the UI thread)
+    boolean resumeOffered;
+
+    // Activity displaying the count (null while it is being recreated)
+    private volatile CountActivity activity;
+
+    // Handler associated to the UI (main) thread
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Receives the progress of the count on the UI (main) thread
+    final ProgressSink uiSink = new ProgressSink() {
+        @Override
+        public void onProgress(int progress) {
+            final CountActivity activity = CountViewModel.this.activity;
+            if (activity != null) {
+                activity.updateCount(progress);
+            }
+        }
+
+        @Override
+        public void onFinished() {
+            final CountActivity activity = CountViewModel.this.activity;
+            // Otherwise, the new activity finds the count ended when it attaches
+            if (activity != null) {
+                activity.finishCount();
+            }
+        }
+    };
+
+    // Resets the UI once the count has stopped
+    private final Runnable stoppedRunnable = uiSink::onFinished;
+
+    // The activity starts displaying the count (called from the UI thread).
+    void attach(CountActivity activity) {
+        this.activity = activity;
+    }
+
+    // The activity is being destroyed (called from the UI thread).
+    void detach(CountActivity activity) {
+        if (this.activity == activity) {
+            this.activity = null;
+        }
+    }
+
+    // Activity displaying the count, or null while it is being recreated (called from any thread).
+    CountActivity getActivity() {
+        return activity;
+    }
+
+    // Runs the given action on the UI (main) thread, where it reaches the activity attached by then
+    // (called from any thread).
+    void post(Runnable action) {
+        handler.post(action);
+    }
+
+    // Notifies the UI that the count has stopped (called from any thread).
+    void notifyStopped() {
+        handler.post(stoppedRunnable);
+    }
+
+    // The activity has been finished for good, so the count is no longer needed
+    @Override
+    protected void onCleared() {
+        if (frameDispatcher != null) {
+            frameDispatcher.cancel();
+        }
+        if (ringDispatcher != null) {
+            ringDispatcher.cancel();
+        }
+        if (engine != null) {
+            engine.stopAsync(null);
+        }
+        if (task != null) {
+            task.cancel(true);
+        }
+        handler.removeCallbacks(stoppedRunnable);
+    }
+}
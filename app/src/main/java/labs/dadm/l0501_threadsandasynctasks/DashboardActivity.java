@@ -19,12 +19,16 @@ public class DashboardActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_dashboard);
 
+        // Detect any message blocking the UI thread from now on, if requested
+        MainThreadWatchdog.installIfRequested(getIntent());
+
         final View.OnClickListener listener = v -> launchActivity(v.getId());
         findViewById(R.id.bProblem).setOnClickListener(listener);
         findViewById(R.id.bThreadmessage).setOnClickListener(listener);
         findViewById(R.id.bThreadRunnable).setOnClickListener(listener);
         findViewById(R.id.bThreadRunOnUi).setOnClickListener(listener);
         findViewById(R.id.bAsyncTask).setOnClickListener(listener);
+        findViewById(R.id.bMultiCount).setOnClickListener(listener);
     }
 
     // Starts the different activities of the application
@@ -46,6 +50,9 @@ public class DashboardActivity extends AppCompatActivity {
         } else if (buttonClicked == R.id.bAsyncTask) {
             // Solution using AsyncTask
             intent = new Intent(DashboardActivity.this, AsyncTaskActivity.class);
+        } else if (buttonClicked == R.id.bMultiCount) {
+            // Many counts sharing a single thread
+            intent = new Intent(DashboardActivity.this, MultiCountActivity.class);
         }
         startActivity(intent);
     }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Message;
+
+// Sends the progress of the count to the UI (main) thread through the lane selected in the options.
+// Ordinary (synchronous) messages are held behind the sync barrier the UI thread sets while it waits
+// for the next frame to be laid out and drawn, and wait for every message queued before them.
+// Asynchronous messages are not held by the barrier, and messages sent to the front of the queue
+// skip every message already waiting, but they also overtake each other, so the latest value is
+// kept apart and read when the message runs, and the end of the count always uses the normal lane.
+final class FastLane {
+
+    private FastLane() {
+    }
+
+    // Sends the message through the given lane.
+    static void send(Handler handler, Message message, CountOptions.Lane lane) {
+        switch (lane) {
+            case ASYNC:
+                setAsynchronous(message);
+                handler.sendMessage(message);
+                break;
+            case FRONT:
+                handler.sendMessageAtFrontOfQueue(message);
+                break;
+            default:
+                handler.sendMessage(message);
+        }
+    }
+
+    // Posts the Runnable through the given lane (the Message carrying it is recycled, as in post()).
+    static void post(Handler handler, Runnable runnable, CountOptions.Lane lane) {
+        switch (lane) {
+            case ASYNC:
+                final Message message = Message.obtain(handler, runnable);
+                setAsynchronous(message);
+                handler.sendMessage(message);
+                break;
+            case FRONT:
+                handler.postAtFrontOfQueue(runnable);
+                break;
+            default:
+                handler.post(runnable);
+        }
+    }
+
+    // Asynchronous messages can only be sent by apps from API level 22,
+    // so older devices fall back to the normal lane
+    private static void setAsynchronous(Message message) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
+            message.setAsynchronous(true);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.view.Choreographer;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.ConflatingChannel;
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressSink;
+
+// Notifies the UI about the progress of the count at most once per frame.
+// The background thread only stores the latest value in a ConflatingChannel and,
+// if no frame callback is pending, asks the Choreographer for one. The callback
+// applies the latest value right before the next frame is drawn, so values
+// published in between are coalesced instead of flooding the main message queue.
+public class FrameProgressDispatcher implements ProgressSink {
+
+    // Receives the progress on the UI (main) thread
+    private final ProgressSink uiSink;
+    // Choreographer of the UI (main) thread
+    private final Choreographer choreographer;
+    // Latest value published by the background thread
+    private final ConflatingChannel channel = new ConflatingChannel();
+
+    // The UI is no longer interested in the progress
+    private volatile boolean cancelled;
+
+    // Applies the latest progress
+    private final Choreographer.FrameCallback progressCallback = frameTimeNanos -> applyLatest();
+    // Applies the latest progress and notifies that the count has reached its end
+    private final Choreographer.FrameCallback finishCallback = frameTimeNanos -> applyFinished();
+
+    // Must be created on the UI (main) thread, as it takes its Choreographer.
+    FrameProgressDispatcher(ProgressSink uiSink) {
+        this.uiSink = uiSink;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    // Called from the background thread.
+    @Override
+    public void onProgress(int progress) {
+        // Only the first value since the last frame schedules a callback
+        if (channel.offer(progress) && !cancelled) {
+            choreographer.postFrameCallback(progressCallback);
+        }
+    }
+
+    // Called from the background thread.
+    @Override
+    public void onFinished() {
+        if (!cancelled) {
+            choreographer.postFrameCallback(finishCallback);
+        }
+    }
+
+    // Removes any pending callback (called from the UI thread).
+    void cancel() {
+        cancelled = true;
+        choreographer.removeFrameCallback(progressCallback);
+        choreographer.removeFrameCallback(finishCallback);
+    }
+
+    private void applyFinished() {
+        applyLatest();
+        if (!cancelled) {
+            uiSink.onFinished();
+        }
+    }
+
+    private void applyLatest() {
+        final int progress = channel.poll();
+        if ((progress != ConflatingChannel.EMPTY) && !cancelled) {
+            uiSink.onProgress(progress);
+        }
+    }
+
+    // Number of values published by the background thread
+    long getPublished() {
+        return channel.getOffered();
+    }
+
+    // Number of values overwritten before reaching the UI
+    long getCoalesced() {
+        return channel.getCoalesced();
+    }
+}
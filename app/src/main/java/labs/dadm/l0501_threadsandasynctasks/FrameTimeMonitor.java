@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.FrameMetrics;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.LatencyHistogram;
+
+// Measures the frames drawn by a window while a count is running.
+// The layout passes of the view hierarchy are counted on every device, through the global layout
+// listener. From API level 24 the duration of each frame, and whether it had to measure and lay
+// out the views, is also taken from the FrameMetrics reported by the renderer, which are
+// delivered on a background thread so they do not add work to the UI thread being measured.
+final class FrameTimeMonitor {
+
+    // Thread receiving the FrameMetrics of every window (created the first time it is needed)
+    private static HandlerThread metricsThread;
+    private static Handler metricsHandler;
+
+    private final Window window;
+    private final ViewTreeObserver.OnGlobalLayoutListener layoutListener = this::onLayout;
+    private Window.OnFrameMetricsAvailableListener metricsListener;
+
+    // Layout passes of the hierarchy (only accessed from the UI thread)
+    private int layoutPasses;
+
+    // Duration of each frame, and frames that measured or laid out views (guarded by this)
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+    private long framesWithLayout;
+
+    FrameTimeMonitor(Window window) {
+        this.window = window;
+    }
+
+    // Whether this device reports the duration of each frame
+    static boolean isFrameTimeAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
+
+    // Starts measuring (called from the UI thread).
+    void start() {
+        window.getDecorView().getViewTreeObserver().addOnGlobalLayoutListener(layoutListener);
+        if (isFrameTimeAvailable()) {
+            metricsListener = (w, metrics, dropped) -> onFrame(metrics);
+            window.addOnFrameMetricsAvailableListener(metricsListener, getMetricsHandler());
+        }
+    }
+
+    // Stops measuring (called from the UI thread).
+    void stop() {
+        final ViewTreeObserver observer = window.getDecorView().getViewTreeObserver();
+        if (observer.isAlive()) {
+            observer.removeOnGlobalLayoutListener(layoutListener);
+        }
+        if (metricsListener != null) {
+            window.removeOnFrameMetricsAvailableListener(metricsListener);
+            metricsListener = null;
+        }
+    }
+
+    int getLayoutPasses() {
+        return layoutPasses;
+    }
+
+    // Copies the duration of the frames measured so far into the given histogram.
+    synchronized void copyFrameTimes(LatencyHistogram into) {
+        into.reset();
+        into.add(frameTimes);
+    }
+
+    synchronized long getFramesWithLayout() {
+        return framesWithLayout;
+    }
+
+    private void onLayout() {
+        layoutPasses++;
+    }
+
+    // Called from the metrics thread
+    private synchronized void onFrame(FrameMetrics metrics) {
+        // The first frame of a window includes its inflation, so it says nothing about the count
+        if (metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) {
+            return;
+        }
+        frameTimes.record(metrics.getMetric(FrameMetrics.TOTAL_DURATION));
+        if (metrics.getMetric(FrameMetrics.LAYOUT_MEASURE_DURATION) > 0) {
+            framesWithLayout++;
+        }
+    }
+
+    private static synchronized Handler getMetricsHandler() {
+        if (metricsHandler == null) {
+            metricsThread = new HandlerThread("FrameMetrics");
+            metricsThread.start();
+            metricsHandler = new Handler(metricsThread.getLooper());
+        }
+        return metricsHandler;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.MessageSink;
+import labs.dadm.l0501_threadsandasynctasks.engine.MessageTarget;
+import labs.dadm.l0501_threadsandasynctasks.engine.RunnableTarget;
+
+// Handler associated to the UI (main) thread, through which the sinks of the engine send the
+// progress of a count. It outlives the activity as long as the count does, as the sinks only
+// reach the UI through the model.
+// The progress goes through the lane selected in the options (see FastLane), and the end of the
+// count through the normal lane.
+final class MainThreadTarget extends Handler implements MessageTarget, RunnableTarget {
+
+    // How the progress is queued on the UI thread
+    private final CountOptions.Lane lane;
+    // Handles the messages sent through this Handler (when used by a MessageSink)
+    MessageSink receiver;
+
+    MainThreadTarget(CountOptions.Lane lane) {
+        super(Looper.getMainLooper());
+
+        this.lane = lane;
+    }
+
+    // Messages and Runnables at the front of the queue overtake each other,
+    // so the sinks have to keep the latest value apart
+    boolean overtakes() {
+        return lane == CountOptions.Lane.FRONT;
+    }
+
+    @Override
+    public void sendProgress(int what, int arg1, Object obj) {
+        // Messages are recycled, so nothing is allocated
+        FastLane.send(this, Message.obtain(this, what, arg1, 0, obj), lane);
+    }
+
+    @Override
+    public void sendEnd(int what) {
+        Message.obtain(this, what).sendToTarget();
+    }
+
+    @Override
+    public void postProgress(Runnable runnable) {
+        FastLane.post(this, runnable, lane);
+    }
+
+    @Override
+    public void postEnd(Runnable runnable) {
+        post(runnable);
+    }
+
+    // Receives and processes a message.
+    @Override
+    public void handleMessage(Message msg) {
+        receiver.handleMessage(msg.what, msg.arg1, msg.obj);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.util.Log;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.LatencyHistogram;
+import labs.dadm.l0501_threadsandasynctasks.engine.StallWatchdog;
+
+// Provides the app-wide watchdog of the UI (main) thread.
+// It is installed through the logging Printer of the main Looper, which is called right before
+// and after dispatching each message. Every message blocking the UI thread longer than the
+// threshold is logged with the stack of the UI thread at that moment.
+// The Looper builds two Strings for each message while the Printer is installed, which would undo
+// the allocation-free dispatch and skew the latencies measured by the counts, so the watchdog is
+// only installed when an activity is started with EXTRA_WATCH_UI_THREAD, e.g.
+// adb shell am start -n labs.dadm.l0501_threadsandasynctasks/.DashboardActivity --ez watch_ui_thread true
+// Once installed, it keeps watching the UI thread until the process ends.
+public final class MainThreadWatchdog {
+
+    // Installs the watchdog (boolean, false by default)
+    static public final String EXTRA_WATCH_UI_THREAD = "watch_ui_thread";
+
+    // Tag used for the log
+    static private final String TAG = "MainThreadWatchdog";
+    // Time dispatching a message after which the UI thread is considered blocked (ms)
+    static private final long STALL_THRESHOLD_MS = 100;
+    // Time the dispatch times are kept for (ms)
+    static private final long WINDOW_MS = 60_000;
+
+    // Watchdog installed when requested (only accessed from the UI thread)
+    private static StallWatchdog watchdog;
+    // Dispatch times of the rolling window, reused each time they are displayed
+    private static final LatencyHistogram window = new LatencyHistogram();
+
+    private MainThreadWatchdog() {
+    }
+
+    // Installs the watchdog of the UI thread if the given intent requests it
+    // (must be called from the UI thread).
+    public static void installIfRequested(Intent intent) {
+        if ((intent != null) && intent.getBooleanExtra(EXTRA_WATCH_UI_THREAD, false)) {
+            install();
+        }
+    }
+
+    // Returns the watchdog of the UI thread, or null if it has not been requested
+    // (must be called from the UI thread).
+    public static StallWatchdog get() {
+        return watchdog;
+    }
+
+    // Installs the watchdog of the UI thread, unless it already is (must be called from the UI thread).
+    private static void install() {
+        if (watchdog == null) {
+            final Looper looper = Looper.getMainLooper();
+            final StallWatchdog result = new StallWatchdog(looper.getThread(),
+                    STALL_THRESHOLD_MS, WINDOW_MS, MainThreadWatchdog::logStall);
+            // The Looper prints ">>>>> Dispatching..." before and "<<<<< Finished..." after each message
+            looper.setMessageLogging(x -> {
+                if (x.charAt(0) == '>') {
+                    result.onDispatchStart();
+                } else if (x.charAt(0) == '<') {
+                    result.onDispatchEnd();
+                }
+            });
+            result.start();
+            watchdog = result;
+        }
+    }
+
+    // Uninstalls the watchdog, if installed, so each test starts as a new process would
+    // (only for tests, called from the UI thread).
+    static void reset() {
+        if (watchdog != null) {
+            Looper.getMainLooper().setMessageLogging(null);
+            watchdog.stop();
+            watchdog = null;
+        }
+        window.reset();
+    }
+
+    // Returns the stalls and dispatch times of the UI thread in the rolling window,
+    // or null if the watchdog has not been requested (must be called from the UI thread).
+    public static String getStats(Context context) {
+        final StallWatchdog watchdog = get();
+        if (watchdog == null) {
+            return null;
+        }
+        watchdog.copyWindow(window);
+        return context.getString(R.string.stall_stats,
+                watchdog.getStalls(),
+                watchdog.getThresholdNanos() / 1_000_000,
+                window.getPercentile(50) / 1e6,
+                window.getPercentile(99) / 1e6,
+                window.getMax() / 1e6,
+                window.getTotalCount());
+    }
+
+    // Logs the stack of the blocked UI thread (called from the watchdog thread)
+    private static void logStall(long blockedNanos, StackTraceElement[] stack) {
+        final Throwable trace = new Throwable("UI thread stack");
+        trace.setStackTrace(stack);
+        Log.w(TAG, "UI thread blocked for " + blockedNanos / 1_000_000 + " ms", trace);
+    }
+}
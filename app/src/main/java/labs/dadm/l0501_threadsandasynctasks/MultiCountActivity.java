@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountScheduler;
+
+// Displays many independent counts, each one in a row with its own ProgressBar, pause and stop.
+// Instead of one thread per count, all the counts are ScheduledCounts sharing the single thread
+// of the app-wide CountScheduler, and the rows are updated at most once per frame.
+// The number of counts can be selected through an Intent extra, e.g.:
+// adb shell am start -n labs.dadm.l0501_threadsandasynctasks/.MultiCountActivity --ei counts 1000
+// as well as the timer slack of the scheduler (ms), so that the increments due within that window
+// are fired in a single wakeup of its thread, e.g. --ei slack 10
+public class MultiCountActivity extends AppCompatActivity {
+
+    // Name of the extra selecting the number of counts
+    static public final String EXTRA_COUNTS = "counts";
+    // Default number of counts
+    static private final int DEFAULT_COUNTS = 100;
+    // Name of the extra selecting the timer slack of the scheduler (ms)
+    static public final String EXTRA_SLACK = "slack";
+    // Minimum time between two updates of the metrics (ms)
+    static private final long STATS_PERIOD_MS = 500;
+
+    // Hold references to View objects
+    TextView tvStats;
+
+    // Holds the counts across configuration changes
+    MultiCountViewModel model;
+    // Binds each count to its row
+    CountRowAdapter adapter;
+
+    // Last time the metrics were updated (ms)
+    private long lastStatsMs;
+    // Wakeups of the scheduler and increments run when the metrics were last updated
+    private long lastWakeups;
+    private long lastCompleted;
+    // Wakeups and increments per second since the previous update of the metrics
+    private double wakeupRate;
+    private double incrementRate;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_multi_count);
+
+        // Detect any message blocking the UI thread, if requested
+        MainThreadWatchdog.installIfRequested(getIntent());
+
+        // Create the counts, unless a previous instance of this activity already did it
+        model = new ViewModelProvider(this).get(MultiCountViewModel.class);
+        // Each count takes its maximum value and interval from the same extras as a single count
+        final CountOptions options = CountOptions.fromIntent(getIntent());
+        model.createCounts(Math.max(1, getIntent().getIntExtra(EXTRA_COUNTS, DEFAULT_COUNTS)),
+                options.getMaxCount(), options.getIntervalMs());
+        model.attach(this);
+        // Fire the increments due within the slack together (the scheduler is shared by the app)
+        model.getScheduler().setSlackMs(Math.max(0, getIntent().getIntExtra(EXTRA_SLACK, 0)));
+
+        adapter = new CountRowAdapter(model, CountActivity.getLabels(
+                getResources().getString(R.string.progress), model.getMaxCount(), options.getReportEvery()));
+        final RecyclerView rvCounts = findViewById(R.id.rvCounts);
+        rvCounts.setLayoutManager(new LinearLayoutManager(this));
+        rvCounts.setHasFixedSize(true);
+        rvCounts.setAdapter(adapter);
+
+        tvStats = findViewById(R.id.tvStats);
+        findViewById(R.id.bStartAll).setOnClickListener(v -> startAll());
+        findViewById(R.id.bStopAll).setOnClickListener(v -> stopAll());
+
+        showStats();
+    }
+
+    // Handles the event to start all the counts.
+    private void startAll() {
+        model.startAll();
+        adapter.notifyItemRangeChanged(0, model.getNumberOfCounts(), CountRowAdapter.PAYLOAD_STATE);
+        showStats();
+    }
+
+    // Handles the event to stop all the counts.
+    private void stopAll() {
+        model.stopAll();
+        adapter.notifyItemRangeChanged(0, model.getNumberOfCounts(), CountRowAdapter.PAYLOAD_STATE);
+        showStats();
+    }
+
+    // Updates the row of a count that has changed since the last frame (called from the UI thread).
+    void onCountChanged(int index) {
+        adapter.notifyItemChanged(index, CountRowAdapter.PAYLOAD_STATE);
+
+        // Update the metrics every now and then, not on every frame
+        final long now = SystemClock.uptimeMillis();
+        if (now - lastStatsMs >= STATS_PERIOD_MS) {
+            showStats();
+        }
+    }
+
+    // Displays how many counts are running and how busy the scheduler is
+    private void showStats() {
+        final long now = SystemClock.uptimeMillis();
+        final CountScheduler scheduler = model.getScheduler();
+        final long wakeups = scheduler.getWakeups();
+        final long completed = scheduler.getCompletedCount();
+        // Rates since the previous update (the first one only sets the starting point)
+        if ((lastStatsMs != 0) && (now > lastStatsMs)) {
+            final double seconds = (now - lastStatsMs) / 1000.0;
+            wakeupRate = (wakeups - lastWakeups) / seconds;
+            incrementRate = (completed - lastCompleted) / seconds;
+        }
+        lastStatsMs = now;
+        lastWakeups = wakeups;
+        lastCompleted = completed;
+
+        // A thread sleeping between the increments of each count would wake up once per increment
+        tvStats.setText(getString(R.string.multi_count_stats,
+                model.getRunningCounts(), model.getNumberOfCounts(),
+                scheduler.getScheduledCount(), completed)
+                + '\n' + getString(R.string.wakeup_stats, scheduler.getSlackMs(),
+                wakeupRate, incrementRate,
+                (wakeupRate > 0) ? incrementRate / wakeupRate : 0));
+    }
+
+    @Override
+    protected void onDestroy() {
+        model.detach(this);
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.view.Choreographer;
+
+import androidx.lifecycle.ViewModel;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountScheduler;
+import labs.dadm.l0501_threadsandasynctasks.engine.CountState;
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressSink;
+import labs.dadm.l0501_threadsandasynctasks.engine.ScheduledCount;
+
+// Keeps the counts of MultiCountActivity alive while the activity is recreated.
+// With hundreds of counts ticking, posting one update per tick would flood the main message queue,
+// so the thread of the scheduler only flags the count that changed and, if no frame callback is
+// pending, ask the Choreographer for one. The callback tells the activity which rows changed
+// right before the next frame is drawn, so each row is updated at most once per frame.
+// With a timer slack, the increments fired in the same wakeup of the scheduler flag their rows before
+// the callback runs, so the whole batch reaches the UI thread in a single message.
+public class MultiCountViewModel extends ViewModel {
+
+    // Runs the increments of all the counts
+    private final CountScheduler scheduler = TaskExecutor.getScheduler();
+    // Choreographer of the UI (main) thread (the model is created on the UI thread)
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    // Maximum count value of each count
+    private int maxCount;
+    // Time between two increments of each count (ms)
+    private long intervalMs;
+    // Counts displayed, one per row (null until created)
+    private ScheduledCount[] counts;
+    // Whether each count has changed since the last frame (1) or not (0)
+    private AtomicIntegerArray changed;
+
+    // A frame callback has been posted and has not run yet
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    // Tells the activity which rows changed
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> applyChanges();
+
+    // Activity displaying the counts (null while it is being recreated)
+    private volatile MultiCountActivity activity;
+
+    // Creates the given number of counts, unless they were already created (called from the UI thread).
+    void createCounts(int number, int maxCount, long intervalMs) {
+        if (counts != null) {
+            return;
+        }
+        this.maxCount = maxCount;
+        this.intervalMs = intervalMs;
+        counts = new ScheduledCount[number];
+        changed = new AtomicIntegerArray(number);
+        for (int i = 0; i < number; i++) {
+            counts[i] = newCount(i);
+        }
+    }
+
+    private ScheduledCount newCount(int index) {
+        return scheduler.newCount(maxCount, intervalMs, new RowSink(index));
+    }
+
+    // The activity starts displaying the counts (called from the UI thread).
+    void attach(MultiCountActivity activity) {
+        this.activity = activity;
+    }
+
+    // The activity is being destroyed (called from the UI thread).
+    void detach(MultiCountActivity activity) {
+        if (this.activity == activity) {
+            this.activity = null;
+        }
+    }
+
+    int getNumberOfCounts() {
+        return counts.length;
+    }
+
+    ScheduledCount getCount(int index) {
+        return counts[index];
+    }
+
+    int getMaxCount() {
+        return maxCount;
+    }
+
+    CountScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Starts the count of the given row, replacing it with a new one if it already ended.
+    void start(int index) {
+        if (!counts[index].getState().isActive()) {
+            counts[index] = newCount(index);
+        }
+        counts[index].start();
+    }
+
+    // Starts all the counts that are not running yet.
+    void startAll() {
+        for (int i = 0; i < counts.length; i++) {
+            start(i);
+        }
+    }
+
+    // Stops all the counts (without waiting for their next increment).
+    void stopAll() {
+        for (ScheduledCount count : counts) {
+            count.stop();
+        }
+    }
+
+    // Number of counts that are still running, paused or stopping
+    int getRunningCounts() {
+        int running = 0;
+        for (ScheduledCount count : counts) {
+            final CountState state = count.getState();
+            if ((state != CountState.IDLE) && (state != CountState.FINISHED)) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    // Flags the count as changed (called from the thread of the scheduler).
+    private void markChanged(int index) {
+        changed.set(index, 1);
+        // Only the first change since the last frame posts a callback
+        if (framePending.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+
+    // Called on the UI thread right before the next frame is drawn
+    private void applyChanges() {
+        // Changes flagged from now on will post another callback
+        framePending.set(false);
+        final MultiCountActivity activity = this.activity;
+        for (int i = 0; i < counts.length; i++) {
+            if ((changed.getAndSet(i, 0) == 1) && (activity != null)) {
+                activity.onCountChanged(i);
+            }
+        }
+    }
+
+    // The activity has been finished for good, so the counts are no longer needed
+    @Override
+    protected void onCleared() {
+        choreographer.removeFrameCallback(frameCallback);
+        if (counts != null) {
+            stopAll();
+        }
+    }
+
+    // Flags the row of the count whenever it changes.
+    private class RowSink implements ProgressSink {
+
+        // Row displaying the count
+        private final int index;
+
+        RowSink(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onProgress(int progress) {
+            markChanged(index);
+        }
+
+        @Override
+        public void onFinished() {
+            markChanged(index);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.ProgressSink;
+import labs.dadm.l0501_threadsandasynctasks.engine.SpscRingBuffer;
+
+// Notifies the UI about the progress of the count through a lock-free ring buffer.
+// The background thread writes each value into an SpscRingBuffer and only posts a reused
+// Runnable when the UI thread is not already going to drain it, so no Message is obtained
+// per value. On each wakeup the UI thread applies every value available, in order.
+// What happens when the UI falls behind and the ring fills up depends on its Policy.
+public class RingProgressDispatcher implements ProgressSink {
+
+    // Number of values the ring holds before applying its Policy
+    static private final int RING_CAPACITY = 32;
+
+    // Receives the progress on the UI (main) thread
+    private final ProgressSink uiSink;
+    // Handler associated to the UI (main) thread
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // The UI is no longer interested in the progress
+    private volatile boolean cancelled;
+
+    // Applies every value available in the ring
+    private final Runnable drainRunnable = this::drain;
+    // Applies the values left in the ring and notifies that the count has reached its end
+    private final Runnable finishRunnable = this::applyFinished;
+
+    // Values published by the background thread
+    private final SpscRingBuffer ring;
+
+    RingProgressDispatcher(ProgressSink uiSink, SpscRingBuffer.Policy policy) {
+        this.uiSink = uiSink;
+        this.ring = new SpscRingBuffer(RING_CAPACITY, policy, () -> handler.post(drainRunnable));
+    }
+
+    // Called from the background thread.
+    @Override
+    public void onProgress(int progress) {
+        if (!cancelled) {
+            ring.offer(progress);
+        }
+    }
+
+    // Called from the background thread.
+    @Override
+    public void onFinished() {
+        if (!cancelled) {
+            handler.post(finishRunnable);
+        }
+    }
+
+    // Removes any pending Runnable (called from the UI thread).
+    void cancel() {
+        cancelled = true;
+        handler.removeCallbacks(drainRunnable);
+        handler.removeCallbacks(finishRunnable);
+    }
+
+    private void applyFinished() {
+        drain();
+        if (!cancelled) {
+            uiSink.onFinished();
+        }
+    }
+
+    private void drain() {
+        if (!cancelled) {
+            ring.drainTo(uiSink);
+        }
+    }
+
+    SpscRingBuffer getRing() {
+        return ring;
+    }
+}
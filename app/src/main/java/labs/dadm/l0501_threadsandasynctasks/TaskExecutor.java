@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.os.Process;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountClock;
+import labs.dadm.l0501_threadsandasynctasks.engine.CountScheduler;
+import labs.dadm.l0501_threadsandasynctasks.engine.WorkerPool;
+
+// Provides the app-wide pool of background threads that runs every count and BackgroundTask.
+// It is created the first time it is needed, and its threads run with background priority,
+// so they do not compete with the UI thread. Unlike the serial executor used by AsyncTask,
+// several counts run in parallel, up to the size of the pool, before the following ones are queued.
+// It also provides the app-wide CountScheduler, whose single thread runs the increments of many
+// counts that hold no thread while waiting (as in MultiCountActivity), and the app-wide
+// ForkJoinPool, with one background-priority thread per core, that runs CPU-bound work.
+// Finally, it provides the clock the counts of the activities run on: the real one, unless a test
+// replaces it with a VirtualClock so that the counts end in milliseconds in a deterministic order.
+public final class TaskExecutor {
+
+    // Maximum number of threads in the pool (counts mostly wait, so more threads than cores)
+    static private final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    // Time an idle thread is kept alive (s)
+    static private final long KEEP_ALIVE_SECONDS = 30;
+    // Maximum number of counts waiting for a thread
+    static private final int QUEUE_CAPACITY = 64;
+
+    // Duration of a tick of the scheduler, the most an increment can be late (ms)
+    static private final long SCHEDULER_TICK_MS = 2;
+
+    // Lazily created pool shared by all the counts
+    private static volatile WorkerPool pool;
+    // Lazily created scheduler shared by all the scheduled counts
+    private static volatile CountScheduler scheduler;
+    // Lazily created pool shared by all the CPU-bound work
+    private static volatile ForkJoinPool computePool;
+    // Clock of the counts started from now on
+    private static volatile CountClock clock = CountClock.SYSTEM;
+
+    private TaskExecutor() {
+    }
+
+    // Returns the pool shared by all the counts, creating it the first time.
+    public static WorkerPool get() {
+        WorkerPool result = pool;
+        if (result == null) {
+            synchronized (TaskExecutor.class) {
+                result = pool;
+                if (result == null) {
+                    result = new WorkerPool("CountWorker", POOL_SIZE, KEEP_ALIVE_SECONDS, QUEUE_CAPACITY,
+                            () -> Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND));
+                    pool = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Returns the scheduler shared by all the scheduled counts, creating it the first time.
+    public static CountScheduler getScheduler() {
+        CountScheduler result = scheduler;
+        if (result == null) {
+            synchronized (TaskExecutor.class) {
+                result = scheduler;
+                if (result == null) {
+                    result = new CountScheduler("CountScheduler", SCHEDULER_TICK_MS,
+                            () -> Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND));
+                    scheduler = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Returns the clock of the counts started from now on.
+    public static CountClock getClock() {
+        return clock;
+    }
+
+    // Runs the counts started from now on with the given clock (e.g. a VirtualClock in tests).
+    public static void setClock(CountClock clock) {
+        if (clock == null) {
+            throw new NullPointerException("clock == null");
+        }
+        TaskExecutor.clock = clock;
+    }
+
+    // Returns the pool shared by all the CPU-bound work, creating it the first time.
+    public static ForkJoinPool getComputePool() {
+        ForkJoinPool result = computePool;
+        if (result == null) {
+            synchronized (TaskExecutor.class) {
+                result = computePool;
+                if (result == null) {
+                    result = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                            pool -> new ForkJoinWorkerThread(pool) {
+                                @Override
+                                protected void onStart() {
+                                    super.onStart();
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                }
+                            }, null, false);
+                    computePool = result;
+                }
+            }
+        }
+        return result;
+    }
+}
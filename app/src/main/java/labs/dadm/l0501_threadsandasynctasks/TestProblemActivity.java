@@ -5,6 +5,7 @@
 package labs.dadm.l0501_threadsandasynctasks;
 
 import android.os.Bundle;
+import android.view.View;
 import android.widget.Button;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -20,6 +21,7 @@ public class TestProblemActivity extends AppCompatActivity {
     // Hold references to View objects
     ProgressBar progressBar;
     TextView tvProgress;
+    TextView tvStats;
     Button bStart;
     Button bPause;
     Button bStop;
@@ -32,19 +34,25 @@ public class TestProblemActivity extends AppCompatActivity {
         // Keep a reference to:
         // the ProgressBar displaying the current progress of the count (init 0, max 100)
         // the TextView displaying the progress of the count in text format (x/100)
+        // the TextView displaying how long the UI thread has been blocked
         // the Buttons to start, pause/continue and stop the count
         progressBar = findViewById(R.id.pbProgress);
         tvProgress = findViewById(R.id.tvProgress);
+        tvStats = findViewById(R.id.tvStats);
         bStart = findViewById(R.id.bStart);
         bPause = findViewById(R.id.bPause);
         bStop = findViewById(R.id.bStop);
 
         // Set the initial value of the count to 0
-        tvProgress.setText(String.format(getResources().getString(R.string.progress), 0));
+        tvProgress.setText(String.format(getResources().getString(R.string.progress),
+                0, progressBar.getMax()));
 
         findViewById(R.id.bStart).setOnClickListener(v -> startCount());
         findViewById(R.id.bPause).setOnClickListener(v -> pauseCount());
         findViewById(R.id.bStop).setOnClickListener(v -> stopCount());
+
+        // Detect any message blocking the UI thread, if requested
+        MainThreadWatchdog.installIfRequested(getIntent());
     }
 
     // Handles the event to start the count.
@@ -69,9 +77,11 @@ public class TestProblemActivity extends AppCompatActivity {
                 // Update the ProgressBar and the TextView with the new value
                 progressBar.setProgress(currentProgress);
                 tvProgress.setText(String.format(
-                        getResources().getString(R.string.progress), currentProgress));
+                        getResources().getString(R.string.progress), currentProgress, maxProgress));
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                // Nothing interrupts the UI thread, but if something did, keep the request and stop
+                Thread.currentThread().interrupt();
+                break;
             }
         }
 
@@ -79,6 +89,17 @@ public class TestProblemActivity extends AppCompatActivity {
         bStart.setEnabled(true);
         bPause.setEnabled(false);
         bStop.setEnabled(false);
+
+        // The blocking click is only measured once it has been dispatched,
+        // so display the stalls of the UI thread from the following message
+        bStart.post(this::showStats);
+    }
+
+    // Displays how long the UI thread has been blocked
+    private void showStats() {
+        final String stallStats = MainThreadWatchdog.getStats(this);
+        tvStats.setText((stallStats != null) ? stallStats : getString(R.string.stall_stats_disabled));
+        tvStats.setVisibility(View.VISIBLE);
     }
 
     // Handles the event to pause the count.
@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+public class AsyncTaskActivityTest extends CountActivityTest<AsyncTaskActivity> {
+
+    @Override
+    protected Class<AsyncTaskActivity> getActivityClass() {
+        return AsyncTaskActivity.class;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+import android.content.Intent;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import labs.dadm.l0501_threadsandasynctasks.engine.CountClock;
+import labs.dadm.l0501_threadsandasynctasks.engine.VirtualClock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+// Starts, pauses, resumes and stops the count of an activity through its buttons, checking what
+// the UI displays. The count runs on the app-wide pool with a VirtualClock, so it takes no real time,
+// and a Gate holds it at a given virtual time while the test clicks. The main Looper is paused:
+// the messages posted by the count only run when the test idles it, as they would on a device
+// between frames. Each kind of activity runs these tests through its own subclass.
+// The state the activities share through static fields (labels, latencies, checkpoints and the
+// watchdog of the UI thread) is reset before and after each test, as it outlives the activities.
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public abstract class CountActivityTest<T extends CountActivity> {
+
+    // Time the count has to reach what the test waits for
+    static private final long TIMEOUT_MS = 5_000;
+
+    private VirtualClock clock;
+    private ActivityController<T> controller;
+    T activity;
+
+    // Kind of activity tested
+    protected abstract Class<T> getActivityClass();
+
+    @Before
+    public void setUp() {
+        CountActivity.resetSharedState();
+        MainThreadWatchdog.reset();
+        clock = new VirtualClock();
+        TaskExecutor.setClock(clock);
+        controller = Robolectric.buildActivity(getActivityClass()).setup();
+        activity = controller.get();
+    }
+
+    @After
+    public void tearDown() {
+        controller.pause().stop().destroy();
+        TaskExecutor.setClock(CountClock.SYSTEM);
+        CountActivity.resetSharedState();
+        MainThreadWatchdog.reset();
+    }
+
+    @Test
+    public void watchdogIsOnlyInstalledWhenRequested() {
+        assertNull(MainThreadWatchdog.get());
+
+        final Intent intent = new Intent(activity, getActivityClass())
+                .putExtra(MainThreadWatchdog.EXTRA_WATCH_UI_THREAD, true);
+        final ActivityController<T> watched = Robolectric.buildActivity(getActivityClass(), intent).setup();
+        assertNotNull(MainThreadWatchdog.get());
+        watched.pause().stop().destroy();
+    }
+
+    @Test
+    public void countRunsToTheEnd() {
+        activity.bStart.performClick();
+        assertFalse(activity.bStart.isEnabled());
+
+        idleUntil(() -> activity.bStart.isEnabled());
+        assertDisplayed(100);
+        assertFalse(activity.bPause.isEnabled());
+        assertFalse(activity.bStop.isEnabled());
+    }
+
+    @Test
+    public void pausedCountResumesWhereItWas() {
+        // Hold the count during its 21st interval, once 20 has been notified
+        final Gate gate = new Gate(1_010);
+        activity.bStart.performClick();
+        gate.awaitReached();
+        activity.bPause.performClick();
+        gate.open();
+
+        idleUntil(() -> activity.tvProgress.getText().toString().equals("20/100"));
+        assertEquals(activity.getString(R.string.continue_button), activity.bPause.getText().toString());
+        assertFalse(activity.bStart.isEnabled());
+
+        activity.bPause.performClick();
+        assertEquals(activity.getString(R.string.pause_button), activity.bPause.getText().toString());
+        idleUntil(() -> activity.bStart.isEnabled());
+        assertDisplayed(100);
+    }
+
+    @Test
+    public void stoppedCountResetsTheButtonsAndKeepsItsValue() {
+        // Hold the count during its 25th interval, once 24 has been notified
+        final Gate gate = new Gate(1_234);
+        activity.bStart.performClick();
+        gate.awaitReached();
+        activity.bStop.performClick();
+        assertFalse(activity.bStart.isEnabled());
+        assertFalse(activity.bPause.isEnabled());
+        assertFalse(activity.bStop.isEnabled());
+        gate.open();
+
+        idleUntil(() -> activity.bStart.isEnabled());
+        assertDisplayed(24);
+        assertFalse(activity.bPause.isEnabled());
+        assertFalse(activity.bStop.isEnabled());
+    }
+
+    @Test
+    public void countCanStartAgainOnceStopped() {
+        final Gate gate = new Gate(1_234);
+        activity.bStart.performClick();
+        gate.awaitReached();
+        activity.bStop.performClick();
+        gate.open();
+        idleUntil(() -> activity.bStart.isEnabled());
+
+        // Nothing left from the previous count resets the new one
+        activity.bStart.performClick();
+        idleUntil(() -> activity.bStart.isEnabled());
+        assertDisplayed(100);
+    }
+
+    private void assertDisplayed(int progress) {
+        assertEquals(progress + "/100", activity.tvProgress.getText().toString());
+        assertEquals(progress, activity.progressBar.getProgress());
+    }
+
+    // Runs the messages posted to the main Looper until the condition holds
+    private static void idleUntil(BooleanSupplier condition) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+        while (true) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for the UI");
+            }
+            Thread.yield();
+        }
+    }
+
+    // Holds the thread of the count when the virtual time reaches the given time,
+    // until the test opens it (stopping the count while held interrupts the thread).
+    private final class Gate implements Runnable {
+
+        private final CountDownLatch reached = new CountDownLatch(1);
+        private final CountDownLatch opened = new CountDownLatch(1);
+
+        Gate(long atMs) {
+            clock.schedule(atMs, TimeUnit.MILLISECONDS, this);
+        }
+
+        @Override
+        public void run() {
+            reached.countDown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    opened.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            // Keep the interrupt of stop(), so the count sees it once the gate opens
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void awaitReached() {
+            try {
+                assertTrue("The count never reached the gate",
+                        reached.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        void open() {
+            opened.countDown();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+public class ThreadMessageActivityTest extends CountActivityTest<ThreadMessageActivity> {
+
+    @Override
+    protected Class<ThreadMessageActivity> getActivityClass() {
+        return ThreadMessageActivity.class;
+    }
+}
@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks;
+
+public class ThreadRunnableActivityTest extends CountActivityTest<ThreadRunnableActivity> {
+
+    @Override
+    protected Class<ThreadRunnableActivity> getActivityClass() {
+        return ThreadRunnableActivity.class;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Cost of keeping the progress of a count in a ProgressCheckpoint:
+// - count: time per step of a count without interval (only notifying its last value), saving
+//   the progress every given number of steps (0 to not save it), so the score of each cadence
+//   minus the one of 0 is the overhead of checkpointing per tick
+// - save: a single checkpoint (a few stores into the mapped file)
+// - saveAndForce: a checkpoint flushed to the storage device, the system call avoided on each tick
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckpointBenchmark {
+
+    // Steps of each count
+    static private final int STEPS = 1_000_000;
+
+    // Number of steps between two checkpoints of a count (only a parameter of count())
+    @State(Scope.Thread)
+    public static class Cadence {
+        @Param({"0", "1", "100", "10000"})
+        public int checkpointEvery;
+    }
+
+    private File file;
+    private ProgressCheckpoint checkpoint;
+    private int progress;
+
+    // Ignores the progress of the count
+    private final ProgressSink sink = new ProgressSink() {
+        @Override
+        public void onProgress(int progress) {
+        }
+
+        @Override
+        public void onFinished() {
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("checkpoint", ".bin");
+        checkpoint = ProgressCheckpoint.open(file);
+        checkpoint.begin(STEPS, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public CountEngine count(Cadence cadence) {
+        final CountEngine.Builder builder = new CountEngine.Builder(sink)
+                .maxCount(STEPS)
+                .intervalMs(0)
+                .reportEvery(STEPS);
+        if (cadence.checkpointEvery > 0) {
+            builder.checkpoint(checkpoint, cadence.checkpointEvery);
+        }
+        final CountEngine engine = builder.build();
+        engine.run();
+        return engine;
+    }
+
+    @Benchmark
+    public void save() {
+        checkpoint.save(++progress);
+    }
+
+    @Benchmark
+    public void saveAndForce() {
+        checkpoint.save(++progress);
+        checkpoint.force();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cost of each way the app sends a progress value to the UI thread, dispatched by a StandInLooper:
+// - message: Message.obtain(handler, what, Integer) + sendToTarget() (ThreadMessageActivity)
+// - handlerPost: Handler.post() of a lambda capturing the value (ThreadRunnableActivity)
+// - runOnUiThread: Activity.runOnUiThread() of a lambda (ThreadRunOnUiActivity)
+// - publishProgress: AsyncTask.publishProgress(), which wraps a varargs array in a result object
+// Producers are throttled to MAX_IN_FLIGHT pending values, so the throughput reported is the
+// end-to-end one (values applied by the UI thread) rather than how fast the queue grows.
+// Run with "-prof gc" for the allocation rate, and with "-t 1", "-t 2", "-t 4"... to see how
+// each path scales with the number of producer threads.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    // Maximum number of values posted and not yet applied
+    static private final int MAX_IN_FLIGHT = 1024;
+    // Identifies a message updating the progress
+    static private final int UPDATE_PROGRESS = 0;
+
+    private StandInLooper looper;
+    private StandInLooper.Handler handler;
+    private StandInActivity activity;
+    private StandInAsyncTask task;
+
+    // Values posted by all the producers
+    private final AtomicLong posted = new AtomicLong();
+    // Values applied by the UI thread (only written by it)
+    private volatile long applied;
+    // Last value applied
+    private int progress;
+
+    @Setup
+    public void setUp() {
+        looper = new StandInLooper("main");
+        handler = new StandInLooper.Handler(looper) {
+            @Override
+            void handleMessage(StandInLooper.Message message) {
+                if (message.what == UPDATE_PROGRESS) {
+                    apply((Integer) message.obj);
+                }
+            }
+        };
+        activity = new StandInActivity(looper);
+        task = new StandInAsyncTask(looper);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        looper.quit();
+    }
+
+    // Value produced by each producer thread (beyond the Integer cache, as in a long count)
+    @State(Scope.Thread)
+    public static class Producer {
+        int value = 1_000;
+
+        int next() {
+            return ++value;
+        }
+    }
+
+    @Benchmark
+    public void message(Producer producer) {
+        final int value = producer.next();
+        throttle();
+        StandInLooper.Message.obtain(handler, UPDATE_PROGRESS, (Object) value).sendToTarget();
+    }
+
+    @Benchmark
+    public void handlerPost(Producer producer) {
+        final int value = producer.next();
+        throttle();
+        handler.post(() -> apply(value));
+    }
+
+    @Benchmark
+    public void runOnUiThread(Producer producer) {
+        final int value = producer.next();
+        throttle();
+        activity.runOnUiThread(() -> apply(value));
+    }
+
+    @Benchmark
+    public void publishProgress(Producer producer) {
+        final int value = producer.next();
+        throttle();
+        task.publishProgress(value);
+    }
+
+    // Waits while too many values are pending, then counts a new one.
+    private void throttle() {
+        while (posted.get() - applied >= MAX_IN_FLIGHT) {
+            Thread.yield();
+        }
+        posted.incrementAndGet();
+    }
+
+    // Applies a value on the UI thread.
+    private void apply(int value) {
+        progress = value;
+        applied++;
+    }
+
+    // Stand-in for Activity.runOnUiThread().
+    private static final class StandInActivity {
+
+        private final StandInLooper looper;
+        private final StandInLooper.Handler handler;
+
+        StandInActivity(StandInLooper looper) {
+            this.looper = looper;
+            this.handler = new StandInLooper.Handler(looper);
+        }
+
+        void runOnUiThread(Runnable action) {
+            if (!looper.isCurrentThread()) {
+                handler.post(action);
+            } else {
+                action.run();
+            }
+        }
+    }
+
+    // Stand-in for the progress path of AsyncTask.
+    private final class StandInAsyncTask {
+
+        static private final int MESSAGE_POST_PROGRESS = 2;
+
+        private final StandInLooper.Handler handler;
+
+        StandInAsyncTask(StandInLooper looper) {
+            this.handler = new StandInLooper.Handler(looper) {
+                @Override
+                void handleMessage(StandInLooper.Message message) {
+                    final TaskResult result = (TaskResult) message.obj;
+                    result.task.onProgressUpdate(result.values);
+                }
+            };
+        }
+
+        void publishProgress(Integer... values) {
+            StandInLooper.Message.obtain(handler, MESSAGE_POST_PROGRESS,
+                    new TaskResult(this, values)).sendToTarget();
+        }
+
+        void onProgressUpdate(Integer... values) {
+            apply(values[0]);
+        }
+    }
+
+    // Holder AsyncTask allocates for each progress update
+    private static final class TaskResult {
+        final StandInAsyncTask task;
+        final Integer[] values;
+
+        TaskResult(StandInAsyncTask task, Integer[] values) {
+            this.task = task;
+            this.values = values;
+        }
+    }
+}
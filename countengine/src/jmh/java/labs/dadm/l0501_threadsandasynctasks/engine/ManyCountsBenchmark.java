@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Time to run N short counts at the same time: one Thread per count, each one sleeping
+// between its increments (CountEngine), vs all of them on the single thread of a CountScheduler
+// (ScheduledCount). The ideal time is TICKS * INTERVAL_MS; anything above it is the cost of
+// creating, scheduling and switching between threads. Run with -prof gc to compare allocations.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ManyCountsBenchmark {
+
+    // Increments of each count
+    static private final int TICKS = 20;
+    // Time between two increments of each count (ms)
+    static private final long INTERVAL_MS = 5;
+    // Duration of a tick of the scheduler (ms)
+    static private final long SCHEDULER_TICK_MS = 1;
+
+    @Param({"10", "100", "1000"})
+    public int counts;
+
+    private CountScheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        scheduler = new CountScheduler("CountScheduler", SCHEDULER_TICK_MS, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    // Counts down as each count reaches its end
+    private static ProgressSink finishedSink(CountDownLatch finished) {
+        return new ProgressSink() {
+            @Override
+            public void onProgress(int progress) {
+            }
+
+            @Override
+            public void onFinished() {
+                finished.countDown();
+            }
+        };
+    }
+
+    @Benchmark
+    public void threadPerCount() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(counts);
+        final ProgressSink sink = finishedSink(finished);
+        for (int i = 0; i < counts; i++) {
+            new Thread(new CountEngine(TICKS, INTERVAL_MS, sink)).start();
+        }
+        finished.await();
+    }
+
+    @Benchmark
+    public void sharedScheduler() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(counts);
+        final ProgressSink sink = finishedSink(finished);
+        for (int i = 0; i < counts; i++) {
+            scheduler.newCount(TICKS, INTERVAL_MS, sink).start();
+        }
+        finished.await();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Numbers tested per second by the CPU-bound work of a count (PrimeCountWork) depending on the
+// number of threads of its ForkJoinPool. The score scales with the parallelism up to the number
+// of available cores, as the chunks share nothing but the LongAdders of the results.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimeCountBenchmark {
+
+    // Steps of the count (the benchmark cycles through them)
+    static private final int STEPS = 100;
+    // Numbers tested on each step
+    static private final int NUMBERS_PER_STEP = 100_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+    private PrimeCountWork work;
+    private int step;
+    // Never cancelled
+    private final CancellationToken token = new CancellationToken();
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(parallelism);
+        work = new PrimeCountWork(pool, STEPS, NUMBERS_PER_STEP);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBERS_PER_STEP)
+    public void runStep() throws InterruptedException {
+        work.runStep(step, token);
+        step = (step + 1) % STEPS;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Cost of producing the label of one tick: String.format() (previous behaviour) vs ProgressLabels.
+// Run with "-prof gc": gc.alloc.rate.norm is the number of bytes allocated per tick.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressLabelsBenchmark {
+
+    // Same format as the progress string resource of the app
+    static private final String FORMAT = "%1d/100";
+
+    private ProgressLabels labels;
+    private int progress;
+
+    @Setup
+    public void setUp() {
+        labels = new ProgressLabels(FORMAT, Locale.getDefault(), CountEngine.DEFAULT_MAX_COUNT).prefill();
+    }
+
+    // Next value of the count, cycling through 0..MAX_COUNT
+    private int nextProgress() {
+        progress = (progress == CountEngine.DEFAULT_MAX_COUNT) ? 0 : progress + 1;
+        return progress;
+    }
+
+    @Benchmark
+    public String format() {
+        return String.format(FORMAT, nextProgress());
+    }
+
+    @Benchmark
+    public String cached() {
+        return labels.get(nextProgress());
+    }
+}
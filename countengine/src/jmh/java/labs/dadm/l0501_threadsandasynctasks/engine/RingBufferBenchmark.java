@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of sending progress values to the UI thread, dispatched by a StandInLooper, as fast as the
+// count thread can produce them (far beyond one tick every 50 ms):
+// - messageQueue: one recycled Message per value (Message.obtain(handler, what, arg1)), with at
+//   most RING_CAPACITY values pending, so it slows the producer down as BLOCK does
+// - ring: values written into an SpscRingBuffer, with one reused Runnable posted per wakeup,
+//   for each backpressure policy
+// Besides the producer throughput, the "delivered" and "wakeups" counters show how many values
+// reached the UI thread and how many messages it dispatched for them. Run with "-prof gc" to
+// check that neither path allocates per value.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class RingBufferBenchmark {
+
+    // Values pending before the producer has to wait (or the ring applies its policy)
+    static private final int RING_CAPACITY = 32;
+    // Identifies a message updating the progress
+    static private final int UPDATE_PROGRESS = 0;
+
+    // Values and messages handled by the UI thread during an iteration
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long delivered;
+        public long wakeups;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            delivered = 0;
+            wakeups = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MessageQueueState {
+
+        private StandInLooper looper;
+        private StandInLooper.Handler handler;
+
+        // Values posted by the producer (only written by it)
+        private volatile long posted;
+        // Values applied by the UI thread (only written by it)
+        private volatile long applied;
+        // Last value applied
+        private int progress;
+
+        @Setup
+        public void setUp() {
+            looper = new StandInLooper("main");
+            handler = new StandInLooper.Handler(looper) {
+                @Override
+                void handleMessage(StandInLooper.Message message) {
+                    if (message.what == UPDATE_PROGRESS) {
+                        progress = message.arg1;
+                        applied++;
+                    }
+                }
+            };
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            looper.quit();
+        }
+
+        void send(int value) {
+            while (posted - applied >= RING_CAPACITY) {
+                Thread.yield();
+            }
+            posted++;
+            StandInLooper.Message.obtain(handler, UPDATE_PROGRESS, value).sendToTarget();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RingState {
+
+        @Param({"BLOCK", "DROP_OLDEST", "CONFLATE"})
+        public SpscRingBuffer.Policy policy;
+
+        private StandInLooper looper;
+        private StandInLooper.Handler handler;
+        private SpscRingBuffer ring;
+
+        // Last value applied
+        private int progress;
+        // Applies each value on the UI thread
+        private final ProgressSink uiSink = new ProgressSink() {
+            @Override
+            public void onProgress(int value) {
+                progress = value;
+            }
+
+            @Override
+            public void onFinished() {
+            }
+        };
+        // Applies every value available in the ring
+        private final Runnable drainRunnable = () -> ring.drainTo(uiSink);
+
+        // Values delivered and wakeups at the start of the iteration
+        private long deliveredBefore;
+        private long wakeupsBefore;
+
+        @Setup
+        public void setUp() {
+            looper = new StandInLooper("main");
+            handler = new StandInLooper.Handler(looper);
+            ring = new SpscRingBuffer(RING_CAPACITY, policy, () -> handler.post(drainRunnable));
+        }
+
+        @Setup(Level.Iteration)
+        public void startIteration() {
+            deliveredBefore = ring.getDelivered();
+            wakeupsBefore = ring.getWakeups();
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            looper.quit();
+        }
+    }
+
+    // Value produced by the count thread (beyond the Integer cache, as in a long count)
+    @State(Scope.Thread)
+    public static class Producer {
+        int value = 1_000;
+
+        int next() {
+            return ++value;
+        }
+    }
+
+    @Benchmark
+    public void messageQueue(MessageQueueState state, Producer producer, Counters counters) {
+        state.send(producer.next());
+        // Each value is a message dispatched by the UI thread
+        counters.delivered++;
+        counters.wakeups++;
+    }
+
+    @Benchmark
+    public void ring(RingState state, Producer producer, Counters counters) {
+        final int value = producer.next();
+        state.ring.offer(value);
+        // Counters of the UI thread so far in this iteration, read now and then so the producer
+        // does not compete with the UI thread for their cache lines on every value
+        if ((value & 1023) == 0) {
+            counters.delivered = state.ring.getDelivered() - state.deliveredBefore;
+            counters.wakeups = state.ring.getWakeups() - state.wakeupsBefore;
+        }
+    }
+}
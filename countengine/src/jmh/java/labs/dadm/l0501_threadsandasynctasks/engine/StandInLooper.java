@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// JVM stand-in for the Android Looper, MessageQueue, Handler and Message classes, so the cost of
+// each way of reaching the UI thread can be benchmarked without a device. It keeps what matters
+// for that cost: Messages recycled through a pool guarded by a global lock, a linked queue guarded
+// by its own lock, a consumer thread blocked while the queue is empty, and Runnables carried in
+// Message.callback.
+// A looper can bound the messages pending in its queue, making the sender spin until the loop
+// catches up. This stands in for the interval of a real count, which keeps the UI thread ahead of
+// it, so the messages keep being recycled from the pool instead of allocated.
+final class StandInLooper implements Runnable {
+
+    // Queue of pending messages
+    private final Object lock = new Object();
+    private Message head;
+    private Message tail;
+    private boolean blocked;
+    private boolean quit;
+    // Messages in the queue (written under lock, read by the senders waiting for room)
+    private volatile int pending;
+    // Maximum messages in the queue (0 for no limit)
+    private final int maxPending;
+
+    // Thread running the loop (the "UI thread")
+    private final Thread thread;
+
+    StandInLooper(String name) {
+        this(name, 0);
+    }
+
+    StandInLooper(String name, int maxPending) {
+        this.maxPending = maxPending;
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    boolean isCurrentThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    void quit() throws InterruptedException {
+        synchronized (lock) {
+            quit = true;
+            lock.notify();
+        }
+        thread.join();
+    }
+
+    private void enqueue(Message message) {
+        if (maxPending > 0) {
+            while (pending >= maxPending) {
+                Thread.yield();
+            }
+        }
+        synchronized (lock) {
+            pending++;
+            if (tail == null) {
+                head = message;
+            } else {
+                tail.next = message;
+            }
+            tail = message;
+            if (blocked) {
+                lock.notify();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final Message message;
+            synchronized (lock) {
+                while ((head == null) && !quit) {
+                    blocked = true;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    blocked = false;
+                }
+                if (quit) {
+                    return;
+                }
+                message = head;
+                pending--;
+                head = message.next;
+                if (head == null) {
+                    tail = null;
+                }
+            }
+            // Dispatch as Handler.dispatchMessage() does
+            if (message.callback != null) {
+                message.callback.run();
+            } else {
+                message.target.handleMessage(message);
+            }
+            message.recycle();
+        }
+    }
+
+    // Stand-in for android.os.Message.
+    static final class Message {
+
+        // Pool of recycled messages, guarded by a global lock as in Android
+        static private final Object POOL_LOCK = new Object();
+        static private final int MAX_POOL_SIZE = 50;
+        private static Message pool;
+        private static int poolSize;
+
+        int what;
+        int arg1;
+        Object obj;
+        Runnable callback;
+        Handler target;
+        private Message next;
+
+        static Message obtain() {
+            synchronized (POOL_LOCK) {
+                if (pool != null) {
+                    final Message message = pool;
+                    pool = message.next;
+                    message.next = null;
+                    poolSize--;
+                    return message;
+                }
+            }
+            return new Message();
+        }
+
+        static Message obtain(Handler target, int what) {
+            final Message message = obtain();
+            message.target = target;
+            message.what = what;
+            return message;
+        }
+
+        static Message obtain(Handler target, int what, Object obj) {
+            final Message message = obtain();
+            message.target = target;
+            message.what = what;
+            message.obj = obj;
+            return message;
+        }
+
+        static Message obtain(Handler target, int what, int arg1) {
+            final Message message = obtain();
+            message.target = target;
+            message.what = what;
+            message.arg1 = arg1;
+            return message;
+        }
+
+        static Message obtain(Handler target, int what, int arg1, Object obj) {
+            final Message message = obtain();
+            message.target = target;
+            message.what = what;
+            message.arg1 = arg1;
+            message.obj = obj;
+            return message;
+        }
+
+        void sendToTarget() {
+            target.sendMessage(this);
+        }
+
+        private void recycle() {
+            what = 0;
+            arg1 = 0;
+            obj = null;
+            callback = null;
+            target = null;
+            synchronized (POOL_LOCK) {
+                if (poolSize < MAX_POOL_SIZE) {
+                    next = pool;
+                    pool = this;
+                    poolSize++;
+                }
+            }
+        }
+    }
+
+    // Stand-in for android.os.Handler.
+    static class Handler {
+
+        private final StandInLooper looper;
+
+        Handler(StandInLooper looper) {
+            this.looper = looper;
+        }
+
+        void handleMessage(Message message) {
+        }
+
+        final void sendMessage(Message message) {
+            message.target = this;
+            looper.enqueue(message);
+        }
+
+        final void post(Runnable runnable) {
+            final Message message = Message.obtain();
+            message.callback = runnable;
+            sendMessage(message);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// As the MainThreadTarget of the app (normal lane): the Handler through which the sinks of the
+// engine reach the thread of a StandInLooper, so the real sinks run on a JVM.
+final class StandInTarget extends StandInLooper.Handler implements MessageTarget, RunnableTarget {
+
+    // Handles the messages sent through this Handler (when used by a MessageSink)
+    MessageSink receiver;
+
+    StandInTarget(StandInLooper looper) {
+        super(looper);
+    }
+
+    @Override
+    public void sendProgress(int what, int arg1, Object obj) {
+        StandInLooper.Message.obtain(this, what, arg1, obj).sendToTarget();
+    }
+
+    @Override
+    public void sendEnd(int what) {
+        StandInLooper.Message.obtain(this, what).sendToTarget();
+    }
+
+    @Override
+    public void postProgress(Runnable runnable) {
+        post(runnable);
+    }
+
+    @Override
+    public void postEnd(Runnable runnable) {
+        post(runnable);
+    }
+
+    @Override
+    void handleMessage(StandInLooper.Message message) {
+        receiver.handleMessage(message.what, message.arg1, message.obj);
+    }
+
+    // Creates a MessageSink sending its messages through this Handler
+    MessageSink messageSink(ProgressSink uiSink, boolean unboxed) {
+        receiver = new MessageSink(this, uiSink, unboxed, false);
+        return receiver;
+    }
+}
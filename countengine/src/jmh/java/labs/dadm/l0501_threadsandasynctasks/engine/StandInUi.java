@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Stands in for the UI of a count: keeps the latest value and lets the producer wait for the end.
+final class StandInUi implements ProgressSink {
+
+    // Latest value displayed (only accessed by the looper thread)
+    private int displayed;
+    // Number of counts that have reached their end
+    private volatile int finished;
+
+    @Override
+    public void onProgress(int progress) {
+        displayed = progress;
+    }
+
+    @Override
+    public void onFinished() {
+        finished++;
+    }
+
+    int getFinished() {
+        return finished;
+    }
+
+    // Waits (spinning, so nothing is allocated) until the looper has handled the end of the given count
+    void awaitFinished(int count) {
+        while (finished < count) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Time from pressing Start to the first tick of the count: creating and starting a new Thread
+// on each press (previous behaviour) vs submitting the count to a WorkerPool whose thread is
+// already alive. The count has no interval, so the time measured is the cost of getting a thread.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartLatencyBenchmark {
+
+    private WorkerPool pool;
+
+    // Set by the count when its first tick arrives
+    private volatile boolean ticked;
+
+    private final ProgressSink sink = new ProgressSink() {
+        @Override
+        public void onProgress(int progress) {
+            ticked = true;
+        }
+
+        @Override
+        public void onFinished() {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        pool = new WorkerPool("CountWorker", 4, 30, 64, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private CountEngine newCount() {
+        ticked = false;
+        return new CountEngine(1, 0, sink);
+    }
+
+    private void awaitFirstTick() {
+        while (!ticked) {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    public void newThread() {
+        new Thread(newCount()).start();
+        awaitFirstTick();
+    }
+
+    @Benchmark
+    public void workerPool() {
+        pool.execute(newCount());
+        awaitFirstTick();
+    }
+}
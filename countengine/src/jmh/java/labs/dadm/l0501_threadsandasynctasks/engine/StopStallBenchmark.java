@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Time the calling (UI) thread is blocked when stopping a running count, requested right after
+// the count has started sleeping one interval:
+// - flagOnlyStopAndJoin: the previous behaviour, a stop flag only checked once the sleep ends,
+//   followed by join(), so the UI thread waits for the rest of the interval (the worst-case stall)
+// - stopAndJoin: stop() interrupts the sleep, so join() only waits for the thread to wake up and exit
+// - stopAsync: never waits for the thread (StopAsyncTest checks that it returns before the thread
+//   has ended, the time it takes is only measured here)
+// Sampled mode reports the percentiles and the maximum.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StopStallBenchmark {
+
+    // Each invocation stops a count running with the default interval, once it is sleeping
+    @State(Scope.Thread)
+    public static class RunningCount {
+
+        CountEngine engine;
+        Thread thread;
+
+        @Setup(Level.Invocation)
+        public void startCount() {
+            engine = new CountEngine(Integer.MAX_VALUE, CountEngine.DEFAULT_INTERVAL_MS, new ProgressSink() {
+                @Override
+                public void onProgress(int progress) {
+                }
+
+                @Override
+                public void onFinished() {
+                }
+            });
+            thread = new Thread(engine);
+            thread.start();
+            awaitSleeping(thread);
+        }
+
+        @TearDown(Level.Invocation)
+        public void awaitCount() throws InterruptedException {
+            thread.join();
+        }
+    }
+
+    // Count stopped as before stop() interrupted the thread: a flag checked after each interval
+    @State(Scope.Thread)
+    public static class FlagOnlyCount implements Runnable {
+
+        volatile boolean stopped;
+        Thread thread;
+
+        @Setup(Level.Invocation)
+        public void startCount() {
+            stopped = false;
+            thread = new Thread(this);
+            thread.start();
+            awaitSleeping(thread);
+        }
+
+        @TearDown(Level.Invocation)
+        public void awaitCount() throws InterruptedException {
+            thread.join();
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    Thread.sleep(CountEngine.DEFAULT_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Waits until the given thread is sleeping (in the first interval of its count)
+    static void awaitSleeping(Thread thread) {
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    public void flagOnlyStopAndJoin(FlagOnlyCount count) throws InterruptedException {
+        count.stopped = true;
+        count.thread.join();
+    }
+
+    @Benchmark
+    public void stopAndJoin(RunningCount count) throws InterruptedException {
+        count.engine.stop();
+        count.thread.join();
+    }
+
+    @Benchmark
+    public void stopAsync(RunningCount count) {
+        count.engine.stopAsync(null);
+    }
+}
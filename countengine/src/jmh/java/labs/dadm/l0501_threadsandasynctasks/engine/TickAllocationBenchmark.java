@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Objects allocated on each tick of a count by the payloads the app sends to the UI thread:
+// a boxed Integer (Message.obj), a lambda capturing the value (Handler.post()), or the
+// allocation-free variants (Message.arg1 and a reused Runnable reading the latest value).
+// Each tick goes through the sink the app uses (MessageSink, RunnableSink or ReusedRunnableSink)
+// and a StandInLooper, whose thread handles it as the UI thread would, so both threads are measured.
+// Each invocation runs a whole count with no interval and waits for the looper to handle its end,
+// so the result is per tick. The looper bounds its queue, as the interval of a real count does.
+// Run with "-prof gc": gc.alloc.rate.norm must be ~0 B/op for the allocation-free variants
+// (TickAllocationTest checks it for each thread).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickAllocationBenchmark {
+
+    // Beyond the Integer cache, as in a long count
+    static private final int TICKS = 10_000;
+    // Messages pending in the queue of the looper, below the size of the pool of messages
+    static final int MAX_PENDING = 32;
+
+    private StandInLooper looper;
+    private final StandInUi uiSink = new StandInUi();
+
+    private ProgressSink boxedInteger;
+    private ProgressSink capturingLambda;
+    private ProgressSink intArgument;
+    private ProgressSink reusedRunnable;
+
+    @Setup
+    public void setUp() {
+        looper = new StandInLooper("main", MAX_PENDING);
+        boxedInteger = new StandInTarget(looper).messageSink(uiSink, false);
+        capturingLambda = new RunnableSink(new StandInTarget(looper), uiSink, false);
+        intArgument = new StandInTarget(looper).messageSink(uiSink, true);
+        reusedRunnable = new ReusedRunnableSink(new StandInTarget(looper), uiSink);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        looper.quit();
+    }
+
+    private void runCount(ProgressSink sink) {
+        final int finished = uiSink.getFinished();
+        new CountEngine(TICKS, 0, sink).run();
+        uiSink.awaitFinished(finished + 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public void boxedInteger() {
+        runCount(boxedInteger);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public void capturingLambda() {
+        runCount(capturingLambda);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public void intArgument() {
+        runCount(intArgument);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public void reusedRunnable() {
+        runCount(reusedRunnable);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Cost of scheduling and cancelling a timer while tens of thousands of other timers are active,
+// as when many counts wait for their next increment: a TimingWheel (O(1), reused Timer objects)
+// vs a ScheduledThreadPoolExecutor (O(log n) heap, a new ScheduledFuture on each schedule).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimingWheelBenchmark {
+
+    // Delay of the timers kept active during the benchmark, so they never fire (ms)
+    static private final long IDLE_DELAY_MS = 600_000;
+    // Delay of the timers scheduled and cancelled by the benchmark (ms)
+    static private final long DELAY_MS = 50;
+    // Timers scheduled and cancelled in turn (a cancelled Timer is only reusable after the next tick)
+    static private final int TIMERS = 1 << 16;
+
+    @Param({"10000", "50000"})
+    public int activeTimers;
+
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor executor;
+
+    private final TimingWheel.Timer[] timers = new TimingWheel.Timer[TIMERS];
+    private int next;
+
+    private final Runnable task = () -> {
+    };
+
+    private static TimingWheel.Timer newTimer() {
+        return new TimingWheel.Timer() {
+            @Override
+            protected void onExpired() {
+            }
+        };
+    }
+
+    @Setup
+    public void setUp() {
+        wheel = new TimingWheel("TimingWheel", 1, 512, null);
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        for (int i = 0; i < activeTimers; i++) {
+            wheel.schedule(newTimer(), IDLE_DELAY_MS);
+            executor.schedule(task, IDLE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < TIMERS; i++) {
+            timers[i] = newTimer();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean timingWheel() {
+        final TimingWheel.Timer timer = timers[next++ & (TIMERS - 1)];
+        return wheel.schedule(timer, DELAY_MS) && timer.cancel();
+    }
+
+    @Benchmark
+    public boolean scheduledExecutor() {
+        final ScheduledFuture<?> future = executor.schedule(task, DELAY_MS, TimeUnit.MILLISECONDS);
+        return future.cancel(false);
+    }
+}
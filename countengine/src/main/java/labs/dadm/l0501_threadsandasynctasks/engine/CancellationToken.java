@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tells long units of work that they have been requested to stop.
+// Interrupting a thread only ends the operations that block it (sleep(), park()...), so work that
+// keeps the CPU busy, possibly on other threads (e.g. the chunks of a ForkJoinPool), checks the token
+// every now and then instead. The time of the request is kept to measure how long it took to stop.
+public class CancellationToken {
+
+    // Value of requestedNanos while not cancelled
+    static private final long NOT_CANCELLED = Long.MIN_VALUE;
+
+    // Time the cancellation was requested (on the clock), set only once
+    private final AtomicLong requestedNanos = new AtomicLong(NOT_CANCELLED);
+    // Clock of the count the token belongs to
+    private final CountClock clock;
+
+    public CancellationToken() {
+        this(CountClock.SYSTEM);
+    }
+
+    public CancellationToken(CountClock clock) {
+        this.clock = clock;
+    }
+
+    // Requests the cancellation. Returns false if it had already been requested.
+    public boolean cancel() {
+        return requestedNanos.compareAndSet(NOT_CANCELLED, clock.nanoTime());
+    }
+
+    public boolean isCancelled() {
+        return requestedNanos.get() != NOT_CANCELLED;
+    }
+
+    // Stops the work, as if its thread had been interrupted, if the cancellation has been requested.
+    public void throwIfCancelled() throws InterruptedException {
+        if (isCancelled()) {
+            throw new InterruptedException("Cancelled");
+        }
+    }
+
+    // Time the cancellation was requested (on the clock), only valid once cancelled
+    public long getRequestedNanos() {
+        return requestedNanos.get();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single slot holding only the latest progress of a count.
+// The producer overwrites any value not yet consumed, so the consumer applies at most
+// one value each time it polls, no matter how many values were offered in between.
+public class ConflatingChannel {
+
+    // The slot holds no value (progress is never negative)
+    static public final int EMPTY = -1;
+
+    // Latest value offered and not yet polled
+    private final AtomicInteger latest = new AtomicInteger(EMPTY);
+
+    // Number of values offered by the producer
+    private final AtomicLong offered = new AtomicLong();
+    // Number of values overwritten before being polled
+    private final AtomicLong coalesced = new AtomicLong();
+    // Number of values polled by the consumer
+    private final AtomicLong delivered = new AtomicLong();
+
+    // Stores the given value, replacing any value not yet polled.
+    // Returns true when the slot was empty, so the consumer has to be scheduled.
+    public boolean offer(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value < 0: " + value);
+        }
+        offered.incrementAndGet();
+        if (latest.getAndSet(value) != EMPTY) {
+            coalesced.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // Takes the latest value, or EMPTY if no value has been offered since the last poll.
+    public int poll() {
+        final int value = latest.getAndSet(EMPTY);
+        if (value != EMPTY) {
+            delivered.incrementAndGet();
+        }
+        return value;
+    }
+
+    public long getOffered() {
+        return offered.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Source of time of a count: every read of the time and every wait of a CountEngine goes through it.
+// SYSTEM uses System.nanoTime(), Thread.sleep() and LockSupport, while a VirtualClock advances
+// instantly, so a count of any length runs in a few milliseconds with a deterministic order.
+public interface CountClock {
+
+    // Real time of the device
+    CountClock SYSTEM = new CountClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        }
+
+        @Override
+        public void parkNanos(Object blocker, long nanos) {
+            LockSupport.parkNanos(blocker, nanos);
+        }
+
+        @Override
+        public void park(Object blocker) {
+            LockSupport.park(blocker);
+        }
+
+        @Override
+        public void unpark(Thread thread) {
+            LockSupport.unpark(thread);
+        }
+    };
+
+    // Current time (ns), only meaningful compared to other times of the same clock
+    long nanoTime();
+
+    // Blocks the calling thread for the given time, as Thread.sleep() does.
+    void sleep(long nanos) throws InterruptedException;
+
+    // Blocks the calling thread for up to the given time, as LockSupport.parkNanos() does
+    // (it may return earlier, e.g. when the thread is interrupted).
+    void parkNanos(Object blocker, long nanos);
+
+    // Blocks the calling thread until unparked, as LockSupport.park() does
+    // (it may return earlier, e.g. when the thread is interrupted).
+    void park(Object blocker);
+
+    // Unblocks the given thread if parked, or makes its next park() return right away.
+    void unpark(Thread thread);
+}
@@ -0,0 +1,639 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+// Performs a count that increases each interval until reaching the maximum count or being stopped.
+// It does not depend on any Android class: it is run by whatever background thread the caller
+// chooses and notifies its progress to a ProgressSink.
+// While paused, the thread is parked instead of waking up each interval to check the pause,
+// and it is unparked as soon as the count is resumed or stopped.
+// Stopping the count is cooperative: stop() interrupts the thread, so it does not wait for the next
+// increment, and cancels a CancellationToken checked by long work that keeps the CPU busy.
+// Interrupting the thread (e.g. cancelling the task running it) also stops the count.
+// stopAsync() never waits for the thread: it calls back once the count has ended.
+// pause(), resume() and stop() can be called from any thread: they change a single atomic
+// CountState through compare-and-set, so concurrent requests never leave an invalid state.
+// By default the count sleeps one interval between increments, so the time spent on each
+// increment adds up; a FixedRateTicker can pace it on absolute deadlines instead.
+// Either way, TickMetrics measures the jitter and drift of the ticks.
+// Every read of the time and every wait goes through a CountClock: the real one by default, or a
+// VirtualClock, on which the count runs as fast as possible with the same sequence of events.
+// Instead of waiting, each step can also perform a unit of real work (CountWork).
+// With an interval of 0 the count runs as fast as it can (e.g. millions of steps), so only every
+// n-th value can be notified, keeping the sink (and the UI behind it) from becoming the bottleneck.
+// A ProgressCheckpoint can keep the progress every n steps, so a count whose process was killed
+// can start again from the value saved instead of from 0.
+public class CountEngine implements Runnable {
+
+    // Default maximum count value
+    static public final int DEFAULT_MAX_COUNT = 100;
+    // Default time between two increments of the count (ms)
+    static public final long DEFAULT_INTERVAL_MS = 50;
+
+    // Value of the times not reached yet
+    static private final long NOT_YET = Long.MIN_VALUE;
+
+    // Number of recent ticks whose production time is kept (must be a power of two)
+    static private final int PRODUCED_TICKS = 64;
+
+    // Marks that run() has ended, so stop callbacks are called right away
+    static private final Runnable ENDED = () -> {
+    };
+
+    // Maximum count value
+    private final int maxCount;
+    // Time between two increments of the count (ms)
+    private final long intervalMs;
+    // Receives the progress of the count
+    private final ProgressSink sink;
+    // Source of time of the count
+    private final CountClock clock;
+    // Measures the jitter and drift of the ticks
+    private final TickMetrics tickMetrics;
+    // Paces the count on absolute deadlines (null to sleep one interval between increments)
+    private final FixedRateTicker ticker;
+    // Work performed on each step instead of waiting (null to wait)
+    private final CountWork work;
+    // Only multiples of this number of steps (and the maximum count) are notified
+    private final int reportEvery;
+    // Last value notified (only used by the thread running the count)
+    private int lastReported;
+    // Value the count starts from (0 unless resuming from a checkpoint)
+    private final int startProgress;
+    // Keeps the progress of the count (null to not keep it)
+    private final ProgressCheckpoint checkpoint;
+    // Only multiples of this number of steps are saved in the checkpoint
+    private final int checkpointEvery;
+    // Whether this count owns the checkpoint, so it can write it (only used by the thread running the count)
+    private boolean checkpointOwned;
+
+    // Time the count started and ended (on the clock, NOT_YET until then, as any time can be 0)
+    private volatile long startNanos = NOT_YET;
+    private volatile long endNanos = NOT_YET;
+
+    // Current value of the count
+    private volatile int currentProgress;
+    // State of the count, only changed through compare-and-set
+    private final AtomicReference<CountState> state = new AtomicReference<>(CountState.IDLE);
+    // Notified of every change of the state (null for none)
+    private final BiConsumer<CountState, CountState> stateObserver;
+    // Whether run() has been called
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // Thread running the count (null when not running)
+    private volatile Thread worker;
+    // Time when the count was last requested to resume (on the clock)
+    private volatile long resumeRequestedNanos;
+    // Time between the last request to resume and the thread running again (ns, -1 if never resumed)
+    private volatile long lastResumeLatencyNanos = -1;
+    // Maximum time between a request to resume and the thread running again (ns, -1 if never resumed)
+    private volatile long maxResumeLatencyNanos = -1;
+    // Number of times the thread woke up while the count was still paused
+    private volatile long pausedWakeups;
+
+    // Time each of the recent values was produced (on the clock), indexed by value.
+    // They are written before notifying the value, so whoever receives it reads the right time.
+    // A slot is being overwritten while another thread reads it, so the writer clears the value,
+    // then writes the time and the new value (ordered stores, no fence), and the reader discards
+    // the time if the value changed meanwhile
+    private final AtomicLongArray producedNanos = new AtomicLongArray(PRODUCED_TICKS);
+    private final AtomicIntegerArray producedValues = new AtomicIntegerArray(PRODUCED_TICKS);
+
+    // Called once run() has ended (ENDED when it already has)
+    private final AtomicReference<Runnable> stopCallback = new AtomicReference<>();
+
+    // Cancelled when the count is requested to stop
+    private final CancellationToken token;
+    // Held while interrupting the thread, so it is never interrupted once the count has ended
+    private final Object interruptLock = new Object();
+    // Time from the request to stop the count to run() ending (ns, -1 if not stopped)
+    private volatile long stopLatencyNanos = -1;
+
+    public CountEngine(ProgressSink sink) {
+        this(new Builder(sink));
+    }
+
+    public CountEngine(int maxCount, ProgressSink sink) {
+        this(new Builder(sink).maxCount(maxCount));
+    }
+
+    public CountEngine(int maxCount, long intervalMs, ProgressSink sink) {
+        this(new Builder(sink).maxCount(maxCount).intervalMs(intervalMs));
+    }
+
+    private CountEngine(Builder builder) {
+        this.maxCount = builder.maxCount;
+        this.intervalMs = builder.intervalMs;
+        this.sink = builder.sink;
+        this.clock = builder.clock;
+        this.stateObserver = builder.stateObserver;
+        this.token = new CancellationToken(clock);
+        this.work = builder.work;
+        this.reportEvery = builder.getReportEvery();
+        this.startProgress = Math.min(builder.startProgress, maxCount);
+        this.currentProgress = startProgress;
+        this.lastReported = startProgress;
+        this.checkpoint = builder.checkpoint;
+        this.checkpointEvery = builder.checkpointEvery;
+        // A step performing work is expected to take as long as it takes
+        final long periodNanos = (work != null) ? 0 : TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.tickMetrics = new TickMetrics(periodNanos);
+        // A count without interval has no schedule to keep
+        this.ticker = ((builder.fixedRatePolicy == null) || (work != null) || (intervalMs == 0))
+                ? null
+                : new FixedRateTicker(periodNanos, builder.fixedRatePolicy, tickMetrics, clock);
+    }
+
+    public CountState getState() {
+        return state.get();
+    }
+
+    public boolean isPaused() {
+        return state.get() == CountState.PAUSED;
+    }
+
+    // Pauses the count. Returns false if it was not idle nor running
+    // (wait-free: one CAS from RUNNING, then one from IDLE if the first one failed).
+    public boolean pause() {
+        return changeState(CountState.RUNNING, CountState.PAUSED)
+                || changeState(CountState.IDLE, CountState.PAUSED);
+    }
+
+    // Resumes a paused count. Returns false if it was not paused (wait-free, single CAS).
+    public boolean resume() {
+        // Written before the state, so the thread always reads the time of this request
+        resumeRequestedNanos = clock.nanoTime();
+        if (!changeState(CountState.PAUSED, CountState.RUNNING)) {
+            return false;
+        }
+        // Wake up the thread, which is parked while paused
+        clock.unpark(worker);
+        return true;
+    }
+
+    // Requests the count to stop, interrupting the thread, so it stops right away even if it is
+    // sleeping or paused, and cancelling the token checked by the work of each step.
+    // Returns false if it was already stopping or finished.
+    public boolean stop() {
+        CountState current = state.get();
+        // Only a concurrent pause() or resume() can make the CAS fail, so this loop is lock-free
+        while (current.isActive()) {
+            if (changeState(current, CountState.STOPPING)) {
+                token.cancel();
+                interruptWorker();
+                return true;
+            }
+            current = state.get();
+        }
+        return false;
+    }
+
+    // Requests the count to stop without waiting for it, so it can be called from the UI thread.
+    // The callback (if any) is called from the thread once run() has ended, or right away if it already has.
+    public void stopAsync(Runnable onStopped) {
+        stop();
+        if (onStopped == null) {
+            return;
+        }
+        while (true) {
+            final Runnable current = stopCallback.get();
+            if (current == ENDED) {
+                onStopped.run();
+                return;
+            }
+            // Keep any callback registered by a previous call
+            final Runnable next = (current == null) ? onStopped : () -> {
+                current.run();
+                onStopped.run();
+            };
+            if (stopCallback.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public int getCurrentProgress() {
+        return currentProgress;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    // Only multiples of this number of steps (and the maximum count) are notified
+    public int getReportEvery() {
+        return reportEvery;
+    }
+
+    // Time the count has been running so far, pauses included (ns)
+    public long getElapsedNanos() {
+        final long start = startNanos;
+        if (start == NOT_YET) {
+            return 0;
+        }
+        final long end = endNanos;
+        return ((end != NOT_YET) ? end : clock.nanoTime()) - start;
+    }
+
+    // Value the count started from (0 unless resumed from a checkpoint)
+    public int getStartProgress() {
+        return startProgress;
+    }
+
+    // Steps performed per second so far (ticks/s)
+    public double getThroughput() {
+        final long elapsed = getElapsedNanos();
+        return (elapsed > 0) ? (currentProgress - startProgress) * 1e9 / elapsed : 0;
+    }
+
+    // Whether the count has reached its maximum value
+    public boolean isFinished() {
+        return currentProgress == maxCount;
+    }
+
+    // Time between the last request to resume the count and the thread running again
+    // (ns, -1 if it has never been resumed while running)
+    public long getLastResumeLatencyNanos() {
+        return lastResumeLatencyNanos;
+    }
+
+    // Maximum time between a request to resume the count and the thread running again
+    // (ns, -1 if it has never been resumed while running)
+    public long getMaxResumeLatencyNanos() {
+        return maxResumeLatencyNanos;
+    }
+
+    // Number of times the thread woke up while the count was still paused (0 unless spurious)
+    public long getPausedWakeups() {
+        return pausedWakeups;
+    }
+
+    // Returns the time (on the clock) when the given value was produced,
+    // or -1 if it is no longer known (only the last PRODUCED_TICKS values are kept).
+    // It can be called from any thread, while the count keeps overwriting the oldest values.
+    public long getProducedNanos(int progress) {
+        if (progress <= 0) {
+            return -1;
+        }
+        final int index = progress & (PRODUCED_TICKS - 1);
+        if (producedValues.get(index) != progress) {
+            return -1;
+        }
+        final long produced = producedNanos.get(index);
+        // The slot may have been overwritten by a newer value while reading its time
+        return (producedValues.get(index) == progress) ? produced : -1;
+    }
+
+    // Time from the request to stop the count to run() ending (ns), or -1 if it was not stopped
+    public long getStopLatencyNanos() {
+        return stopLatencyNanos;
+    }
+
+    // Source of time of the count (e.g. to compare the time a value was produced with the current time)
+    public CountClock getClock() {
+        return clock;
+    }
+
+    // Jitter and drift of the ticks of the count
+    public TickMetrics getTickMetrics() {
+        return tickMetrics;
+    }
+
+    // Increases the count each interval until reaching the maximum count or the count is stopped.
+    @Override
+    public void run() {
+        // A count cannot be run twice (it may have been paused or stopped before starting)
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("The count has already been run");
+        }
+        worker = Thread.currentThread();
+        changeState(CountState.IDLE, CountState.RUNNING);
+        startNanos = clock.nanoTime();
+        // A previous count still ending keeps the checkpoint until then
+        if (checkpoint != null) {
+            ownCheckpoint();
+        }
+        if (ticker != null) {
+            ticker.start();
+        } else {
+            tickMetrics.start(clock.nanoTime());
+        }
+
+        // Keep counting until the maximum threshold is reached or the count is requested to stop
+        while ((currentProgress < maxCount) && (state.get() != CountState.STOPPING)) {
+            try {
+                // Block while the count is paused, then restart the schedule from now
+                if (awaitResume()) {
+                    rebaseTicks();
+                }
+
+                // Wait for the next increment
+                awaitTick();
+
+                // Increase the count only when it is not paused nor stopped
+                if (state.get() == CountState.RUNNING) {
+                    // Increase the count
+                    final int progress = currentProgress + 1;
+                    currentProgress = progress;
+                    // Notify the current progress of the count (only every reportEvery steps)
+                    if ((progress % reportEvery == 0) || (progress == maxCount)) {
+                        report(progress);
+                    }
+                    // Keep the progress (a few stores into mapped memory, no system call)
+                    if ((checkpoint != null) && (progress % checkpointEvery == 0) && ownCheckpoint()) {
+                        checkpoint.save(progress);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by stop(), or by whoever owns the thread (e.g. a cancelled task
+                // or a pool shutting down), so stop the count in both cases
+                stop();
+            }
+        }
+
+        // Measure how long it took to stop once requested
+        endNanos = clock.nanoTime();
+        if (token.isCancelled()) {
+            stopLatencyNanos = endNanos - token.getRequestedNanos();
+        }
+
+        // A value reached after the last one notified is not lost when the count is stopped
+        if (currentProgress != lastReported) {
+            report(currentProgress);
+        }
+
+        // Finished or stopped on purpose, so there is nothing to resume
+        // (and hand the checkpoint over to the next count)
+        if (checkpointOwned) {
+            checkpoint.clear();
+            checkpoint.release(this);
+            checkpointOwned = false;
+        }
+
+        // Whatever the reason, the count has ended
+        final CountState last = state.getAndSet(CountState.FINISHED);
+        if (stateObserver != null) {
+            stateObserver.accept(last, CountState.FINISHED);
+        }
+        synchronized (interruptLock) {
+            worker = null;
+        }
+        // Clear the interrupt of stop(), so it does not reach the next work of a pooled thread
+        Thread.interrupted();
+
+        // The count has reached its end, so notify it
+        if (currentProgress == maxCount) {
+            sink.onFinished();
+        }
+
+        // Notify anyone waiting for the count to stop
+        final Runnable callback = stopCallback.getAndSet(ENDED);
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    // Whether this count owns the checkpoint, acquiring it if it is free
+    // (a single CAS, only retried while a previous count keeps it).
+    private boolean ownCheckpoint() {
+        if (!checkpointOwned && checkpoint.acquire(this)) {
+            checkpoint.begin(maxCount, intervalMs);
+            checkpointOwned = true;
+        }
+        return checkpointOwned;
+    }
+
+    // Changes the state through compare-and-set, notifying the observer if it changed.
+    private boolean changeState(CountState expected, CountState next) {
+        if (!state.compareAndSet(expected, next)) {
+            return false;
+        }
+        if (stateObserver != null) {
+            stateObserver.accept(expected, next);
+        }
+        return true;
+    }
+
+    // Notifies the given value, keeping the time it was produced.
+    private void report(int progress) {
+        final int index = progress & (PRODUCED_TICKS - 1);
+        // Values are positive, so 0 marks the slot as being written
+        producedValues.lazySet(index, 0);
+        producedNanos.lazySet(index, clock.nanoTime());
+        producedValues.lazySet(index, progress);
+        lastReported = progress;
+        sink.onProgress(progress);
+    }
+
+    // Interrupts the thread running the count, if any.
+    private void interruptWorker() {
+        synchronized (interruptLock) {
+            final Thread thread = worker;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    // Waits for the next tick, either on the fixed-rate schedule or sleeping one interval,
+    // or performs the work of the next step.
+    private void awaitTick() throws InterruptedException {
+        if (work != null) {
+            work.runStep(currentProgress, token);
+            tickMetrics.onTick(clock.nanoTime());
+        } else if (ticker != null) {
+            ticker.awaitTick();
+        } else if (intervalMs == 0) {
+            // No sleep to be interrupted, so check whether the count has to stop.
+            // Without a schedule there is no jitter nor drift to measure, and reading the clock
+            // on each step would take longer than the step itself
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        } else {
+            clock.sleep(TimeUnit.MILLISECONDS.toNanos(intervalMs));
+            tickMetrics.onTick(clock.nanoTime());
+        }
+    }
+
+    // Restarts the schedule of the ticks after a pause.
+    private void rebaseTicks() {
+        if (ticker != null) {
+            ticker.rebase();
+        } else {
+            tickMetrics.rebase(clock.nanoTime());
+        }
+    }
+
+    // Parks the thread until the count is resumed or stopped.
+    // Returns whether the count was actually paused.
+    private boolean awaitResume() throws InterruptedException {
+        if (state.get() != CountState.PAUSED) {
+            return false;
+        }
+        // Display the value reached, which may not have been notified yet
+        if (currentProgress != lastReported) {
+            report(currentProgress);
+        }
+        // A paused count is the one most likely to be killed (its activity is in the background),
+        // so keep the value reached and write it to the storage device, which is fine while idle
+        if ((checkpoint != null) && ownCheckpoint()) {
+            checkpoint.save(currentProgress);
+            checkpoint.force();
+        }
+        // resume() unparks and stop() interrupts the thread after changing the state,
+        // so a request arriving right before park() is not lost
+        clock.park(this);
+        while (state.get() == CountState.PAUSED) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            pausedWakeups++;
+            clock.park(this);
+        }
+
+        // Measure how long it took to run again after being resumed
+        if (state.get() == CountState.RUNNING) {
+            final long latency = clock.nanoTime() - resumeRequestedNanos;
+            lastResumeLatencyNanos = latency;
+            if (latency > maxResumeLatencyNanos) {
+                maxResumeLatencyNanos = latency;
+            }
+        }
+        return true;
+    }
+
+    // Creates a CountEngine with the default maximum count and interval unless stated otherwise.
+    public static class Builder {
+
+        private final ProgressSink sink;
+        private CountClock clock = CountClock.SYSTEM;
+        private int maxCount = DEFAULT_MAX_COUNT;
+        private long intervalMs = DEFAULT_INTERVAL_MS;
+        private FixedRateTicker.Policy fixedRatePolicy;
+        private CountWork work;
+        private int reportEvery = 1;
+        private int reportPercent;
+        private int startProgress;
+        private ProgressCheckpoint checkpoint;
+        private int checkpointEvery = 1;
+        private BiConsumer<CountState, CountState> stateObserver;
+
+        public Builder(ProgressSink sink) {
+            if (sink == null) {
+                throw new NullPointerException("sink == null");
+            }
+            this.sink = sink;
+        }
+
+        public Builder maxCount(int maxCount) {
+            if (maxCount < 0) {
+                throw new IllegalArgumentException("maxCount < 0: " + maxCount);
+            }
+            this.maxCount = maxCount;
+            return this;
+        }
+
+        public Builder intervalMs(long intervalMs) {
+            if (intervalMs < 0) {
+                throw new IllegalArgumentException("intervalMs < 0: " + intervalMs);
+            }
+            this.intervalMs = intervalMs;
+            return this;
+        }
+
+        // Paces the count on absolute deadlines, handling missed ticks with the given policy
+        // (null to sleep one interval between increments, the default).
+        public Builder fixedRate(FixedRateTicker.Policy policy) {
+            this.fixedRatePolicy = policy;
+            return this;
+        }
+
+        // Performs the given work on each step instead of waiting (the interval and pacing are ignored).
+        public Builder work(CountWork work) {
+            this.work = work;
+            return this;
+        }
+
+        // Only notifies multiples of the given number of steps, and the maximum count (1, the default,
+        // notifies every step). The value reached is also notified when the count is paused or stopped.
+        public Builder reportEvery(int steps) {
+            if (steps < 1) {
+                throw new IllegalArgumentException("steps < 1: " + steps);
+            }
+            this.reportEvery = steps;
+            return this;
+        }
+
+        // Only notifies a value each time the count advances the given percentage of the maximum count
+        // (0, the default, to rely on reportEvery() only). The coarser of both granularities is used.
+        public Builder reportPercent(int percent) {
+            if ((percent < 0) || (percent > 100)) {
+                throw new IllegalArgumentException("percent out of [0, 100]: " + percent);
+            }
+            this.reportPercent = percent;
+            return this;
+        }
+
+        // Reads the time and waits on the given clock instead of the real one (e.g. a VirtualClock).
+        public Builder clock(CountClock clock) {
+            if (clock == null) {
+                throw new NullPointerException("clock == null");
+            }
+            this.clock = clock;
+            return this;
+        }
+
+        // Starts the count from the given value instead of 0 (e.g. one read from a checkpoint).
+        public Builder startAt(int progress) {
+            if (progress < 0) {
+                throw new IllegalArgumentException("progress < 0: " + progress);
+            }
+            this.startProgress = progress;
+            return this;
+        }
+
+        // Saves the progress in the given checkpoint every given number of steps, and while paused
+        // (null, the default, to not keep it). The checkpoint is cleared once the count ends.
+        // A checkpoint is only written by one count at a time: if another count still owns it,
+        // this one starts saving once the other has ended.
+        public Builder checkpoint(ProgressCheckpoint checkpoint, int everySteps) {
+            if (everySteps < 1) {
+                throw new IllegalArgumentException("everySteps < 1: " + everySteps);
+            }
+            this.checkpoint = checkpoint;
+            this.checkpointEvery = everySteps;
+            return this;
+        }
+
+        // Notifies every change of the state (previous and new state) from the thread making it,
+        // so tests can check that only valid transitions occur.
+        Builder stateObserver(BiConsumer<CountState, CountState> observer) {
+            this.stateObserver = observer;
+            return this;
+        }
+
+        // Number of steps between two values notified
+        int getReportEvery() {
+            final long percentSteps = (long) maxCount * reportPercent / 100;
+            return (int) Math.max(reportEvery, Math.max(1, percentSteps));
+        }
+
+        public CountEngine build() {
+            return new CountEngine(this);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Runs many counts on a single thread.
+// Instead of keeping a thread asleep between two increments of each count (CountEngine),
+// every increment of a ScheduledCount is a timer of a TimingWheel, fired and run by the driver
+// thread of the wheel, so hundreds of counts share one thread, and scheduling or cancelling
+// an increment costs the same whatever the number of counts.
+// With a timer slack, the increments due within the same window are fired in a single wakeup of the
+// thread, instead of each count waking the CPU on its own schedule. Each count keeps its rate, as it
+// schedules its increments on absolute deadlines: an increment fired late does not delay the next one.
+public class CountScheduler {
+
+    // Buckets of the wheel (one round of the wheel covers WHEEL_SIZE ticks)
+    static private final int WHEEL_SIZE = 512;
+
+    // Fires the increments of all the counts when they are due
+    private final TimingWheel wheel;
+
+    // Increments fire up to tickMs late.
+    // threadInit is run by the thread before any work (e.g. to lower its priority).
+    public CountScheduler(String name, long tickMs, Runnable threadInit) {
+        wheel = new TimingWheel(name, tickMs, WHEEL_SIZE, threadInit);
+    }
+
+    // Creates a new count that will run on this scheduler once started.
+    public ScheduledCount newCount(int maxCount, long intervalMs, ProgressSink sink) {
+        return new ScheduledCount(this, maxCount, intervalMs, sink);
+    }
+
+    // Fires the increment of a count at the given time (System.nanoTime()).
+    // Returns false if it was already scheduled.
+    boolean scheduleAt(TimingWheel.Timer tick, long deadlineNanos) {
+        return wheel.scheduleAt(tick, deadlineNanos);
+    }
+
+    // Lets each increment fire up to the given time after it is due, so that the increments of
+    // different counts are fired together (0, the default, fires each one on its own tick).
+    public void setSlackMs(long slackMs) {
+        wheel.setSlackMs(slackMs);
+    }
+
+    public long getSlackMs() {
+        return wheel.getSlackMs();
+    }
+
+    // Number of times the thread woke up to run increments so far
+    public long getWakeups() {
+        return wheel.getWakeups();
+    }
+
+    // Number of increments waiting for their time
+    public int getScheduledCount() {
+        return wheel.getScheduledCount();
+    }
+
+    // Number of increments run so far
+    public long getCompletedCount() {
+        return wheel.getExpiredCount();
+    }
+
+    // Stops running increments (counts still active will not end).
+    public void shutdown() {
+        wheel.shutdown();
+    }
+}
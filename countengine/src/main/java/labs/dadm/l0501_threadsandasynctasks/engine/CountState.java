@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// States of a CountEngine (or a ScheduledCount) and their valid transitions:
+// IDLE -> RUNNING (run() starts), PAUSED (pause()), STOPPING (stop())
+// RUNNING -> PAUSED (pause()), STOPPING (stop()), FINISHED (maximum count reached)
+// PAUSED -> RUNNING (resume()), STOPPING (stop()), FINISHED (CountEngine paused right after its last step)
+// STOPPING -> FINISHED (run() ends, or right away for a ScheduledCount holding no increment)
+// FINISHED is final.
+public enum CountState {
+    // Created but run() has not started yet
+    IDLE,
+    // Increasing the count each interval
+    RUNNING,
+    // The thread is parked until the count is resumed or stopped
+    PAUSED,
+    // Requested to stop, run() has not ended yet
+    STOPPING,
+    // run() has ended, either stopped or after reaching the maximum count
+    FINISHED;
+
+    // Whether the count can still increase
+    public boolean isActive() {
+        return (this == IDLE) || (this == RUNNING) || (this == PAUSED);
+    }
+}
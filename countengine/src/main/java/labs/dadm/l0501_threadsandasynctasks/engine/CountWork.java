@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Unit of real work performed by a CountEngine on each step, instead of sleeping one interval.
+public interface CountWork {
+
+    // Performs the work of the given step (0 to maxCount - 1), called from the thread of the count.
+    // Long work should check the token every now and then, and give up once cancelled.
+    void runStep(int step, CancellationToken token) throws InterruptedException;
+}
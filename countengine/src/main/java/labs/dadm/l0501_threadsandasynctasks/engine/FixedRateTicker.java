@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Paces a count at a fixed rate: each tick targets an absolute deadline (start + n * period)
+// on the clock of the count, instead of sleeping a period after the previous tick, so the time spent
+// between two waits does not add up. Ticks missed because the thread ran late are either fired
+// back to back (CATCH_UP) or dropped to get back on the schedule (SKIP).
+// Only used by the thread running the count.
+public class FixedRateTicker {
+
+    // What to do with the ticks whose deadline has already passed
+    public enum Policy {
+        // Fire them back to back until the count is on schedule again
+        CATCH_UP,
+        // Drop them and wait for the next deadline of the schedule
+        SKIP
+    }
+
+    // Time between two ticks (ns)
+    private final long periodNanos;
+    // What to do with missed ticks
+    private final Policy policy;
+    // Measures the jitter and drift of the ticks
+    private final TickMetrics metrics;
+    // Source of time of the schedule
+    private final CountClock clock;
+
+    // Deadline of the next tick (ns)
+    private long nextDeadlineNanos;
+
+    public FixedRateTicker(long periodNanos, Policy policy, TickMetrics metrics) {
+        this(periodNanos, policy, metrics, CountClock.SYSTEM);
+    }
+
+    public FixedRateTicker(long periodNanos, Policy policy, TickMetrics metrics, CountClock clock) {
+        this.periodNanos = periodNanos;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    // Starts the schedule now.
+    public void start() {
+        final long now = clock.nanoTime();
+        nextDeadlineNanos = now + periodNanos;
+        metrics.start(now);
+    }
+
+    // Restarts the schedule now after a pause, so the paused time is not caught up.
+    public void rebase() {
+        final long now = clock.nanoTime();
+        nextDeadlineNanos = now + periodNanos;
+        metrics.rebase(now);
+    }
+
+    // Blocks until the deadline of the next tick.
+    // The thread is parked, so an interrupt ends the wait right away.
+    public void awaitTick() throws InterruptedException {
+        long now = clock.nanoTime();
+        while (now < nextDeadlineNanos) {
+            clock.parkNanos(this, nextDeadlineNanos - now);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            now = clock.nanoTime();
+        }
+        metrics.onTick(now);
+
+        nextDeadlineNanos += periodNanos;
+        if ((policy == Policy.SKIP) && (periodNanos > 0) && (now >= nextDeadlineNanos)) {
+            // Whole periods have already passed, so move to the first deadline still ahead
+            final long missed = (now - nextDeadlineNanos) / periodNanos + 1;
+            nextDeadlineNanos += missed * periodNanos;
+            metrics.onSkipped(missed);
+        }
+    }
+}
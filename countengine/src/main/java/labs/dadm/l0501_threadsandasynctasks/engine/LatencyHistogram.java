@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.Arrays;
+
+// Histogram of latencies (ns) using a fixed amount of memory, whatever the number of values.
+// Values are grouped in buckets per power of two, each one split into SUB_BUCKETS linear
+// buckets, so any percentile is reported with an error below 1 / SUB_BUCKETS (12.5%).
+// Recording is a few arithmetic operations and an array increment, so it can be done
+// on the UI thread for every tick. It is not thread-safe: record and read from the same thread.
+public class LatencyHistogram {
+
+    // Linear buckets in each power of two (must be a power of two)
+    static private final int SUB_BUCKETS = 8;
+    static private final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    // Number of values in each bucket
+    private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+
+    // Number of values recorded
+    private long totalCount;
+    // Maximum value recorded
+    private long max;
+
+    // Records a latency (negative values are recorded as 0).
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        totalCount++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    // Removes all the recorded values.
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        max = 0;
+    }
+
+    // Adds all the values recorded by another histogram.
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    // Returns the value below which the given percentage (0..100) of the values fall,
+    // as the upper bound of its bucket (never above the maximum recorded).
+    public long getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(totalCount * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    // Values below SUB_BUCKETS get their own bucket, larger ones are grouped
+    // by their most significant bit and the SUB_BUCKET_BITS bits following it.
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int magnitude = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Notifies the thread displaying a count about its progress through a message per tick
+// (a Message on Android), and handles those messages on that thread.
+// The progress is sent in arg1 when allocations are avoided, or as a boxed Integer otherwise.
+// When the progress goes through a lane where messages overtake each other (the front of the
+// queue), only the first value since the last update sends a message, which reads the latest value.
+public class MessageSink implements ProgressSink {
+
+    // Identifies a message that wants to update the count progress
+    static private final int UPDATE_PROGRESS = 0;
+    // Identifies a message notifying that the count has reached its end
+    static private final int COUNT_FINISHED = 1;
+    // Identifies a message that wants to update the count to the latest value published
+    static private final int UPDATE_LATEST = 2;
+
+    // Queue of the thread displaying the count
+    private final MessageTarget target;
+    // Receives the progress on the thread displaying the count
+    private final ProgressSink uiSink;
+    // Send the progress as an int argument instead of a data object
+    private final boolean unboxed;
+    // Latest value sent when the messages overtake each other (null otherwise)
+    private final ConflatingChannel latest;
+
+    public MessageSink(MessageTarget target, ProgressSink uiSink, boolean unboxed, boolean conflated) {
+        this.target = target;
+        this.uiSink = uiSink;
+        this.unboxed = unboxed;
+        this.latest = conflated ? new ConflatingChannel() : null;
+    }
+
+    @Override
+    public void onProgress(int progress) {
+        if (latest != null) {
+            if (latest.offer(progress)) {
+                target.sendProgress(UPDATE_LATEST, 0, null);
+            }
+            return;
+        }
+
+        if (unboxed) {
+            // Messages are recycled, so nothing is allocated
+            target.sendProgress(UPDATE_PROGRESS, progress, null);
+        } else {
+            target.sendProgress(UPDATE_PROGRESS, 0, progress);
+        }
+    }
+
+    @Override
+    public void onFinished() {
+        target.sendEnd(COUNT_FINISHED);
+    }
+
+    // Processes a message sent by this sink, on the thread displaying the count.
+    public void handleMessage(int what, int arg1, Object obj) {
+        switch (what) {
+
+            // Get progress from the message (data object or arg1)
+            case UPDATE_PROGRESS:
+                uiSink.onProgress((obj != null) ? (int) obj : arg1);
+                break;
+
+            case UPDATE_LATEST:
+                final int progress = latest.poll();
+                if (progress != ConflatingChannel.EMPTY) {
+                    uiSink.onProgress(progress);
+                }
+                break;
+
+            case COUNT_FINISHED:
+                uiSink.onFinished();
+                break;
+        }
+    }
+}
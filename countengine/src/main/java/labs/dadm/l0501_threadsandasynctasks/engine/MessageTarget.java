@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Queue of the thread displaying a count (the UI thread on Android) as seen by a MessageSink.
+// Implementations decide the lane the progress goes through (a Handler may send it asynchronously
+// or to the front of the queue), while the end of the count always goes through the normal lane,
+// so it never overtakes the progress.
+// Each message sent has to be handed back to MessageSink.handleMessage() on that thread.
+public interface MessageTarget {
+
+    // Sends a message with the progress of the count through the lane of the progress
+    void sendProgress(int what, int arg1, Object obj);
+
+    // Sends a message notifying the end of the count through the normal lane
+    void sendEnd(int what);
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+// CPU-bound work counting the primes in consecutive ranges of numbers, one range per step.
+// Each range is split in halves until reaching chunks of CHUNK_SIZE numbers, which are tested
+// by trial division in parallel on a ForkJoinPool (idle threads steal the halves still pending).
+// Every chunk adds its results to LongAdders, which keep one cell per contending thread,
+// so the threads of the pool never contend on a single counter.
+// Once the count is stopped, the chunks still pending return without testing their numbers, and
+// the chunks being tested give up within CANCEL_CHECK_EVERY numbers. The thread of the count waits
+// for the step interruptibly, so stopping the count does not wait for the chunks to give up.
+public class PrimeCountWork implements CountWork {
+
+    // Numbers tested by each task without splitting it further
+    static private final int CHUNK_SIZE = 2_048;
+    // Numbers tested between two checks of the token (must be a power of two)
+    static private final int CANCEL_CHECK_EVERY = 256;
+
+    // Pool running the chunks of each step
+    private final ForkJoinPool pool;
+    // Numbers tested on each step
+    private final int numbersPerStep;
+    // Primes up to the square root of the largest number tested
+    private final int[] basePrimes;
+
+    // Primes found and numbers tested so far, added by all the threads of the pool
+    private final LongAdder primesFound = new LongAdder();
+    private final LongAdder numbersTested = new LongAdder();
+    // Time spent running steps (only written by the thread of the count)
+    private volatile long busyNanos;
+
+    public PrimeCountWork(ForkJoinPool pool, int steps, int numbersPerStep) {
+        this.pool = pool;
+        this.numbersPerStep = numbersPerStep;
+        this.basePrimes = sieve((int) Math.sqrt((double) steps * numbersPerStep) + 1);
+    }
+
+    // Tests the numbers of the range of the step, waiting for all the threads of the pool to finish.
+    @Override
+    public void runStep(int step, CancellationToken token) throws InterruptedException {
+        final long start = System.nanoTime();
+        final long from = (long) step * numbersPerStep;
+        final ForkJoinTask<Void> task = pool.submit(new RangeTask(from, from + numbersPerStep, token));
+        try {
+            // Unlike invoke(), get() returns as soon as the thread is interrupted (e.g. by stop(),
+            // which has already cancelled the token, so the chunks still running give up too)
+            task.get();
+        } catch (ExecutionException e) {
+            // The chunks throw no checked exception
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        } finally {
+            busyNanos += System.nanoTime() - start;
+        }
+        // The results of a cancelled step are incomplete
+        token.throwIfCancelled();
+    }
+
+    public long getPrimesFound() {
+        return primesFound.sum();
+    }
+
+    public long getNumbersTested() {
+        return numbersTested.sum();
+    }
+
+    // Numbers tested per second while running steps
+    public double getThroughput() {
+        final long busy = busyNanos;
+        return (busy == 0) ? 0 : numbersTested.sum() * 1e9 / busy;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // Primes up to the given value (sieve of Eratosthenes)
+    private static int[] sieve(int limit) {
+        final boolean[] composite = new boolean[limit + 1];
+        int count = 0;
+        for (int i = 2; i <= limit; i++) {
+            if (!composite[i]) {
+                count++;
+                for (long j = (long) i * i; j <= limit; j += i) {
+                    composite[(int) j] = true;
+                }
+            }
+        }
+        final int[] primes = new int[count];
+        for (int i = 2, n = 0; i <= limit; i++) {
+            if (!composite[i]) {
+                primes[n++] = i;
+            }
+        }
+        return primes;
+    }
+
+    private boolean isPrime(long number) {
+        if (number < 2) {
+            return false;
+        }
+        for (int prime : basePrimes) {
+            if ((long) prime * prime > number) {
+                return true;
+            }
+            if (number % prime == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Tests a range of numbers, splitting it while it is larger than a chunk.
+    @SuppressWarnings("serial")
+    private class RangeTask extends RecursiveAction {
+
+        private final long from;
+        private final long to;
+        private final CancellationToken token;
+
+        RangeTask(long from, long to, CancellationToken token) {
+            this.from = from;
+            this.to = to;
+            this.token = token;
+        }
+
+        @Override
+        protected void compute() {
+            if (token.isCancelled()) {
+                return;
+            }
+            if (to - from <= CHUNK_SIZE) {
+                int primes = 0;
+                long number = from;
+                for (; number < to; number++) {
+                    // Give up the rest of the chunk once the count is stopped
+                    if ((((number - from) & (CANCEL_CHECK_EVERY - 1)) == 0) && token.isCancelled()) {
+                        break;
+                    }
+                    if (isPrime(number)) {
+                        primes++;
+                    }
+                }
+                primesFound.add(primes);
+                numbersTested.add(number - from);
+            } else {
+                final long middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(from, middle, token), new RangeTask(middle, to, token));
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Keeps the progress of a count in a small memory-mapped file, so it survives the process being
+// killed. Saving a checkpoint only stores a few values into the mapped pages (no system call, no
+// allocation): the kernel writes them back to the file even if the process dies right after.
+// The file holds two records, written alternately. Each record carries a sequence number and a
+// checksum, so a record torn by a crash in the middle of a save fails its checksum and the other
+// one, holding the previous checkpoint, is read instead.
+// A checkpoint has a single writer: begin(), save() and clear() must only be called by the owner
+// that acquired it (e.g. the count running), which releases it once done. A count started while the
+// previous one is still stopping thus never interleaves its records with those of the previous one.
+public class ProgressCheckpoint {
+
+    // Identifies the file and the version of its layout
+    static private final int MAGIC = 0x434b5031;
+    // Layout of the file: header, then two records
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 32;
+    static private final int FILE_SIZE = HEADER_SIZE + 2 * RECORD_SIZE;
+    // Offsets within a record
+    static private final int SEQUENCE = 0;
+    static private final int PROGRESS = 8;
+    static private final int MAX_COUNT = 12;
+    static private final int INTERVAL_MS = 16;
+    static private final int CHECKSUM = 24;
+    // Progress of a record saying the count ended, so there is nothing to resume
+    static private final int NO_PROGRESS = -1;
+
+    // Progress of a count saved in a checkpoint.
+    public static final class Record {
+
+        public final long sequence;
+        public final int progress;
+        public final int maxCount;
+        public final long intervalMs;
+
+        Record(long sequence, int progress, int maxCount, long intervalMs) {
+            this.sequence = sequence;
+            this.progress = progress;
+            this.maxCount = maxCount;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    // Pages of the file mapped into memory
+    private final MappedByteBuffer buffer;
+    // Only writer allowed (null when none)
+    private final AtomicReference<Object> owner = new AtomicReference<>();
+    // Sequence number of the last record written
+    private long sequence;
+
+    // Maximum count and interval of the count saved (set by the count before saving)
+    private int maxCount;
+    private long intervalMs;
+
+    private ProgressCheckpoint(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        final Record newest = readNewest();
+        sequence = (newest != null) ? newest.sequence : 0;
+    }
+
+    // Maps the given file, creating it if needed (it performs disk I/O, so call it off the UI thread
+    // when possible). The mapping stays valid after the file is closed.
+    public static ProgressCheckpoint open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final boolean created = raf.length() != FILE_SIZE;
+            if (created) {
+                raf.setLength(FILE_SIZE);
+            }
+            final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            if (created || (buffer.getInt(0) != MAGIC)) {
+                // A new file, or one with an unknown layout, holds no checkpoint
+                for (int i = 0; i < FILE_SIZE; i += 4) {
+                    buffer.putInt(i, 0);
+                }
+                buffer.putInt(0, MAGIC);
+            }
+            return new ProgressCheckpoint(buffer);
+        }
+    }
+
+    // Makes the given owner the only writer of the checkpoint until it releases it.
+    // Returns whether it owns the checkpoint (false if another owner holds it).
+    public boolean acquire(Object owner) {
+        return this.owner.compareAndSet(null, owner) || (this.owner.get() == owner);
+    }
+
+    // Stops the given owner from writing, so another one can acquire the checkpoint.
+    // Its writes are visible to the next owner.
+    public void release(Object owner) {
+        this.owner.compareAndSet(owner, null);
+    }
+
+    // Sets the maximum count and interval saved with each checkpoint of the next count.
+    public void begin(int maxCount, long intervalMs) {
+        this.maxCount = maxCount;
+        this.intervalMs = intervalMs;
+    }
+
+    // Saves the given progress, replacing the oldest of both records.
+    public void save(int progress) {
+        write(progress);
+    }
+
+    // Saves that the count has ended, so there is nothing to resume.
+    public void clear() {
+        write(NO_PROGRESS);
+    }
+
+    // Returns the latest progress saved, or null if there is nothing to resume
+    // (no checkpoint, the count ended, or both records are damaged).
+    public Record read() {
+        final Record newest = readNewest();
+        return ((newest != null) && (newest.progress != NO_PROGRESS)) ? newest : null;
+    }
+
+    // Flushes the mapped pages to the storage device (a system call, so only call it when the data
+    // must also survive the device losing power, e.g. when the count is paused).
+    public void force() {
+        buffer.force();
+    }
+
+    private void write(int progress) {
+        final long next = sequence + 1;
+        // Records alternate, so the previous checkpoint is intact while this one is written
+        final int offset = HEADER_SIZE + (int) (next & 1) * RECORD_SIZE;
+        buffer.putLong(offset + SEQUENCE, next);
+        buffer.putInt(offset + PROGRESS, progress);
+        buffer.putInt(offset + MAX_COUNT, maxCount);
+        buffer.putLong(offset + INTERVAL_MS, intervalMs);
+        // Written last, so a record torn before this point is detected
+        buffer.putInt(offset + CHECKSUM, checksum(next, progress, maxCount, intervalMs));
+        sequence = next;
+    }
+
+    // Returns the valid record with the highest sequence number, or null if none is valid.
+    private Record readNewest() {
+        final Record first = readRecord(HEADER_SIZE);
+        final Record second = readRecord(HEADER_SIZE + RECORD_SIZE);
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return (first.sequence > second.sequence) ? first : second;
+    }
+
+    private Record readRecord(int offset) {
+        final long recordSequence = buffer.getLong(offset + SEQUENCE);
+        final int progress = buffer.getInt(offset + PROGRESS);
+        final int recordMaxCount = buffer.getInt(offset + MAX_COUNT);
+        final long recordIntervalMs = buffer.getLong(offset + INTERVAL_MS);
+        // A record never written has a sequence of 0
+        if ((recordSequence <= 0)
+                || (buffer.getInt(offset + CHECKSUM)
+                != checksum(recordSequence, progress, recordMaxCount, recordIntervalMs))) {
+            return null;
+        }
+        return new Record(recordSequence, progress, recordMaxCount, recordIntervalMs);
+    }
+
+    // Mixes every field of a record (no allocation, unlike a CRC32 over a byte array)
+    private static int checksum(long sequence, int progress, int maxCount, long intervalMs) {
+        long hash = 0x9E3779B97F4A7C15L;
+        hash = mix(hash ^ sequence);
+        hash = mix(hash ^ progress);
+        hash = mix(hash ^ maxCount);
+        hash = mix(hash ^ intervalMs);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // Finalizer of SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
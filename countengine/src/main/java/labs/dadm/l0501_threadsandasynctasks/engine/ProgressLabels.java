@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.Locale;
+
+// Cache of the texts displaying the progress of a count (e.g. "42/100") for every value
+// reported between 0 and the maximum count. Formatting a label parses the format string and
+// allocates a Formatter and a String, so doing it once per value keeps the UI thread free of garbage.
+// When only every step-th value is reported (e.g. in a count of millions), only those values and
+// the maximum count are cached, so the cache stays small whatever the maximum count.
+public class ProgressLabels {
+
+    // Format string receiving the progress and the maximum count as arguments
+    private final String format;
+    // Locale used to format the labels
+    private final Locale locale;
+    // Maximum count value
+    private final int maxCount;
+    // Values cached are multiples of the step
+    private final int step;
+    // Label of each multiple of the step, and of the maximum count (null until formatted)
+    private final String[] labels;
+
+    public ProgressLabels(String format, Locale locale, int maxCount) {
+        this(format, locale, maxCount, 1);
+    }
+
+    public ProgressLabels(String format, Locale locale, int maxCount, int step) {
+        if (maxCount < 0) {
+            throw new IllegalArgumentException("maxCount < 0: " + maxCount);
+        }
+        if (step < 1) {
+            throw new IllegalArgumentException("step < 1: " + step);
+        }
+        this.format = format;
+        this.locale = locale;
+        this.maxCount = maxCount;
+        this.step = step;
+        this.labels = new String[maxCount / step + 2];
+    }
+
+    // Formats the labels of every value cached in advance, so get() never allocates for them.
+    public ProgressLabels prefill() {
+        for (long i = 0; i < maxCount; i += step) {
+            get((int) i);
+        }
+        get(maxCount);
+        return this;
+    }
+
+    // Returns the label of the given value, formatting it only the first time.
+    // Values out of range or not multiple of the step are formatted each time and not cached.
+    public String get(int progress) {
+        final int index;
+        if (progress == maxCount) {
+            index = labels.length - 1;
+        } else if ((progress >= 0) && (progress < maxCount) && (progress % step == 0)) {
+            index = progress / step;
+        } else {
+            return String.format(locale, format, progress, maxCount);
+        }
+        String label = labels[index];
+        if (label == null) {
+            label = String.format(locale, format, progress, maxCount);
+            labels[index] = label;
+        }
+        return label;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    // Whether this cache can be reused for the given format, locale, maximum count and step.
+    public boolean matches(String format, Locale locale, int maxCount, int step) {
+        return (this.maxCount == maxCount)
+                && (this.step == step)
+                && this.format.equals(format)
+                && this.locale.equals(locale);
+    }
+}
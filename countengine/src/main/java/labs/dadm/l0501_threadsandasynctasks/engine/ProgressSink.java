@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Receives the notifications of a CountEngine.
+// Both methods are called from the background thread running the count, so each
+// implementation decides how (Message, Runnable, runOnUiThread()...) they reach the UI.
+public interface ProgressSink {
+
+    // The count has increased to the given value
+    void onProgress(int progress);
+
+    // The count has reached its maximum value
+    void onFinished();
+}
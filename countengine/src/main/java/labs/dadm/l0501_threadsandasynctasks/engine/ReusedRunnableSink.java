@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Notifies the thread displaying a count about its progress without allocating on each tick.
+// Instead of a new lambda capturing each value, the same Runnable is sent every time
+// and reads the latest value from a field when it is executed on that thread,
+// so it can also go through a lane where Runnables overtake each other.
+public class ReusedRunnableSink implements ProgressSink {
+
+    // Queue of the thread displaying the count
+    private final RunnableTarget target;
+    // Receives the progress on the thread displaying the count
+    private final ProgressSink uiSink;
+
+    // Latest value of the count, read by updateRunnable on the thread displaying the count
+    private volatile int progress;
+
+    // Updates the UI with the latest value of the count
+    private final Runnable updateRunnable = this::applyProgress;
+    // Resets the UI to its initial state
+    private final Runnable finishRunnable = this::applyFinished;
+
+    public ReusedRunnableSink(RunnableTarget target, ProgressSink uiSink) {
+        this.target = target;
+        this.uiSink = uiSink;
+    }
+
+    @Override
+    public void onProgress(int progress) {
+        this.progress = progress;
+        target.postProgress(updateRunnable);
+    }
+
+    @Override
+    public void onFinished() {
+        target.postEnd(finishRunnable);
+    }
+
+    private void applyProgress() {
+        uiSink.onProgress(progress);
+    }
+
+    private void applyFinished() {
+        uiSink.onFinished();
+    }
+}
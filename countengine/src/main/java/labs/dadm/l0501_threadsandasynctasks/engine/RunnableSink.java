@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Notifies the thread displaying a count about its progress through a new Runnable per tick,
+// capturing the value.
+// When the progress goes through a lane where Runnables overtake each other (the front of the
+// queue), only the first value since the last update posts one, which applies the latest value.
+public class RunnableSink implements ProgressSink {
+
+    // Queue of the thread displaying the count
+    private final RunnableTarget target;
+    // Receives the progress on the thread displaying the count
+    private final ProgressSink uiSink;
+
+    // Latest value posted when the Runnables overtake each other (null otherwise),
+    // and the Runnable applying it
+    private final ConflatingChannel latest;
+    private final Runnable latestRunnable = this::applyLatest;
+
+    public RunnableSink(RunnableTarget target, ProgressSink uiSink, boolean conflated) {
+        this.target = target;
+        this.uiSink = uiSink;
+        this.latest = conflated ? new ConflatingChannel() : null;
+    }
+
+    @Override
+    public void onProgress(int progress) {
+        if (latest != null) {
+            if (latest.offer(progress)) {
+                target.postProgress(latestRunnable);
+            }
+            return;
+        }
+        target.postProgress(() -> uiSink.onProgress(progress));
+    }
+
+    @Override
+    public void onFinished() {
+        target.postEnd(uiSink::onFinished);
+    }
+
+    private void applyLatest() {
+        final int progress = latest.poll();
+        if (progress != ConflatingChannel.EMPTY) {
+            uiSink.onProgress(progress);
+        }
+    }
+}
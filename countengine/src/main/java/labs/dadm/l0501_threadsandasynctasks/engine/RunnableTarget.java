@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Queue of the thread displaying a count (the UI thread on Android) as seen by the sinks
+// posting Runnables to it (Handler.post(), runOnUiThread()...).
+// Implementations decide the lane the progress goes through, while the end of the count
+// always goes through the normal lane, so it never overtakes the progress.
+public interface RunnableTarget {
+
+    // Posts a Runnable applying the progress of the count through the lane of the progress
+    void postProgress(Runnable runnable);
+
+    // Posts a Runnable applying the end of the count through the normal lane
+    void postEnd(Runnable runnable);
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Counts from 0 up to a maximum value, increasing the count each interval, without a thread of its own.
+// Each increment is a timer fired by a CountScheduler, which schedules the following one, so the count
+// holds no thread while waiting. A paused count schedules nothing until it is resumed.
+// Increments target absolute deadlines (one interval after the previous deadline), so an increment
+// fired late (e.g. held back by the timer slack of the scheduler) does not delay the following ones.
+// The same timer is scheduled again on each interval, so nothing is allocated per increment.
+// The states and transitions are the same as those of CountEngine (start() plays the role of run()),
+// and the progress is notified to the ProgressSink from the thread of the scheduler.
+public class ScheduledCount {
+
+    // Runs the increments of the count
+    private final CountScheduler scheduler;
+    // Maximum count value
+    private final int maxCount;
+    // Time between two increments of the count (ms)
+    private final long intervalMs;
+    // Receives the progress of the count
+    private final ProgressSink sink;
+
+    // Current state of the count
+    private final AtomicReference<CountState> state = new AtomicReference<>(CountState.IDLE);
+    // Current value of the count (only written by the increments, which never overlap)
+    private volatile int currentProgress;
+    // Time the next increment is due (System.nanoTime())
+    private volatile long nextDeadlineNanos;
+
+    // Increases the count (created once, scheduled on each interval, so at most one is ever scheduled)
+    private final TimingWheel.Timer tick = new TimingWheel.Timer() {
+        @Override
+        protected void onExpired() {
+            tick();
+        }
+    };
+
+    ScheduledCount(CountScheduler scheduler, int maxCount, long intervalMs, ProgressSink sink) {
+        this.scheduler = scheduler;
+        this.maxCount = maxCount;
+        this.intervalMs = intervalMs;
+        this.sink = sink;
+    }
+
+    // Schedules the first increment. Returns false if the count was already started or stopped.
+    public boolean start() {
+        if (!state.compareAndSet(CountState.IDLE, CountState.RUNNING)) {
+            return false;
+        }
+        nextDeadlineNanos = System.nanoTime() + intervalMs * 1_000_000L;
+        scheduleTick();
+        return true;
+    }
+
+    // Pauses the count: the next increment does nothing and schedules no other.
+    // Returns false if the count was not running.
+    public boolean pause() {
+        return state.compareAndSet(CountState.RUNNING, CountState.PAUSED);
+    }
+
+    // Resumes a paused count. Returns false if the count was not paused.
+    public boolean resume() {
+        if (!state.compareAndSet(CountState.PAUSED, CountState.RUNNING)) {
+            return false;
+        }
+        // The paused time is not caught up
+        nextDeadlineNanos = System.nanoTime() + intervalMs * 1_000_000L;
+        scheduleTick();
+        return true;
+    }
+
+    // Requests the count to stop. The scheduled increment is cancelled so the count finishes
+    // right away, unless it is already running (then the count stops when it ends).
+    // Returns false if the count had already stopped or finished.
+    public boolean stop() {
+        while (true) {
+            final CountState current = state.get();
+            if (!current.isActive()) {
+                return false;
+            }
+            if (state.compareAndSet(current, CountState.STOPPING)) {
+                if ((current != CountState.RUNNING) || tick.cancel()) {
+                    // No increment will follow to end the count
+                    state.compareAndSet(CountState.STOPPING, CountState.FINISHED);
+                }
+                return true;
+            }
+        }
+    }
+
+    public CountState getState() {
+        return state.get();
+    }
+
+    public boolean isPaused() {
+        return state.get() == CountState.PAUSED;
+    }
+
+    public int getCurrentProgress() {
+        return currentProgress;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    // Whether the count reached its maximum value
+    public boolean isFinished() {
+        return currentProgress >= maxCount;
+    }
+
+    // Does nothing if the increment is already scheduled
+    private void scheduleTick() {
+        scheduler.scheduleAt(tick, nextDeadlineNanos);
+    }
+
+    // Run by the thread of the scheduler each interval
+    private void tick() {
+        switch (state.get()) {
+            case RUNNING:
+                final int progress = currentProgress + 1;
+                currentProgress = progress;
+                sink.onProgress(progress);
+                if (progress < maxCount) {
+                    // One interval after this deadline, but never in the past after a long delay,
+                    // so missed increments are not fired back to back
+                    nextDeadlineNanos = Math.max(nextDeadlineNanos + intervalMs * 1_000_000L, System.nanoTime());
+                    // If paused meanwhile, the next increment ends the chain
+                    scheduleTick();
+                } else if (state.getAndSet(CountState.FINISHED) != CountState.FINISHED) {
+                    sink.onFinished();
+                }
+                break;
+
+            case STOPPING:
+                state.compareAndSet(CountState.STOPPING, CountState.FINISHED);
+                break;
+
+            default:
+                // Paused (until resumed) or already finished, so schedule nothing
+                break;
+        }
+    }
+}
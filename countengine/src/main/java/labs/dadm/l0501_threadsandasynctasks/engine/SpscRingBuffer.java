@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded lock-free ring of progress values between one producer (the thread of the count)
+// and one consumer (the UI thread).
+// Values are written into a preallocated array, so nothing is allocated or locked per value,
+// unlike a Message linked into the MessageQueue. The producer only runs the wakeup (e.g. posting
+// a reused Runnable to the UI thread) when the consumer is not already going to run, and the
+// consumer drains every value available on each wakeup, so a burst of values costs a single
+// message on the UI thread.
+// When the ring is full the Policy decides what the producer does.
+public class SpscRingBuffer {
+
+    // What the producer does when the ring is full
+    public enum Policy {
+        // Wait for the consumer to make room (the count is slowed down to the pace of the UI)
+        BLOCK,
+        // Discard the oldest value in the ring to make room for the new one
+        DROP_OLDEST,
+        // Keep every value in the ring, and only the latest of those that did not fit
+        CONFLATE
+    }
+
+    // The slot holds no value (progress is never negative)
+    static private final int EMPTY = -1;
+    // Times the blocked producer yields the CPU before parking (the UI thread drains quickly)
+    static private final int BLOCK_YIELDS = 100;
+    // Time the blocked producer parks before checking for room again (ns)
+    static private final long BLOCK_PARK_NANOS = 50_000;
+
+    private final Policy policy;
+    // Schedules the consumer to drain the ring (run from the producer thread)
+    private final Runnable wakeup;
+    // Values of the ring (its size is a power of two)
+    private final int[] values;
+    private final int mask;
+
+    // Position of the next value to read, advanced by the consumer (and by the producer when dropping)
+    private final AtomicLong head = new AtomicLong();
+    // Position of the next value to write, only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // Last head seen by the producer, so it does not read the head on every offer (only used by it)
+    private long cachedHead;
+    // Latest value that did not fit in a full ring with the CONFLATE policy
+    private final AtomicInteger overflow = new AtomicInteger(EMPTY);
+
+    // The consumer has been asked to run and has not started draining yet
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    // Number of values offered, dropped (DROP_OLDEST), conflated (CONFLATE) and delivered,
+    // times the producer had to wait (BLOCK) and times the consumer was woken up
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong wakeups = new AtomicLong();
+
+    // The capacity is rounded up to the next power of two.
+    public SpscRingBuffer(int capacity, Policy policy, Runnable wakeup) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1: " + capacity);
+        }
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.values = new int[size];
+        this.mask = size - 1;
+        this.policy = (policy != null) ? policy : Policy.CONFLATE;
+        this.wakeup = wakeup;
+    }
+
+    // Writes the given value and wakes the consumer up if needed (called from the producer thread).
+    // With the BLOCK policy it waits while the ring is full, and gives up (returning false) if
+    // the thread is interrupted, keeping the interrupt so the count notices it has to stop.
+    public boolean offer(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value < 0: " + value);
+        }
+        offered.incrementAndGet();
+
+        // A value that did not fit before is older than this one, so it goes first
+        if (policy == Policy.CONFLATE) {
+            final int pending = overflow.get();
+            if ((pending != EMPTY) && hasRoom() && (overflow.getAndSet(EMPTY) != EMPTY)) {
+                write(pending);
+            }
+        }
+
+        if (!hasRoom()) {
+            switch (policy) {
+                case BLOCK:
+                    if (!awaitRoom()) {
+                        return false;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    dropOldest();
+                    break;
+                case CONFLATE:
+                    if (overflow.getAndSet(value) != EMPTY) {
+                        conflated.incrementAndGet();
+                    }
+                    requestWakeup();
+                    return true;
+            }
+        }
+        write(value);
+        requestWakeup();
+        return true;
+    }
+
+    // Delivers every value available to the given sink, oldest first (called from the consumer
+    // thread only). Returns the number of values delivered.
+    public int drainTo(ProgressSink sink) {
+        // Values written from now on will ask for another wakeup
+        wakeupPending.set(false);
+        int count = 0;
+        int value;
+        while ((value = poll()) != EMPTY) {
+            sink.onProgress(value);
+            count++;
+        }
+        // The latest value that did not fit is newer than any value in the ring
+        if ((policy == Policy.CONFLATE) && ((value = overflow.getAndSet(EMPTY)) != EMPTY)) {
+            sink.onProgress(value);
+            count++;
+        }
+        delivered.addAndGet(count);
+        return count;
+    }
+
+    // Takes the oldest value in the ring, or EMPTY if there is none
+    private int poll() {
+        while (true) {
+            final long position = head.get();
+            if (position == tail.get()) {
+                return EMPTY;
+            }
+            final int value = values[(int) position & mask];
+            // The producer may have dropped this value meanwhile, and be overwriting its slot
+            if (head.compareAndSet(position, position + 1)) {
+                return value;
+            }
+        }
+    }
+
+    // Whether the producer can write another value without waiting
+    private boolean hasRoom() {
+        final long position = tail.get();
+        if (position - cachedHead < values.length) {
+            return true;
+        }
+        cachedHead = head.get();
+        return position - cachedHead < values.length;
+    }
+
+    // Writes the value and publishes it to the consumer (the ring has room)
+    private void write(int value) {
+        final long position = tail.get();
+        values[(int) position & mask] = value;
+        // Ordered write: the value is visible before the new tail, without a full fence
+        tail.lazySet(position + 1);
+    }
+
+    // Discards the oldest value, unless the consumer has just taken it
+    private void dropOldest() {
+        final long position = head.get();
+        if (head.compareAndSet(position, position + 1)) {
+            dropped.incrementAndGet();
+        }
+        cachedHead = position + 1;
+    }
+
+    // Waits until the consumer makes room, returning false if the thread is interrupted
+    private boolean awaitRoom() {
+        blocked.incrementAndGet();
+        int tries = 0;
+        while (!hasRoom()) {
+            // Make sure the consumer is going to run, or it could never make room
+            requestWakeup();
+            if (tries++ < BLOCK_YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Only the first value since the consumer last started draining wakes it up
+    private void requestWakeup() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            wakeups.incrementAndGet();
+            wakeup.run();
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return values.length;
+    }
+
+    public long getOffered() {
+        return offered.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getConflated() {
+        return conflated.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getBlocked() {
+        return blocked.get();
+    }
+
+    public long getWakeups() {
+        return wakeups.get();
+    }
+}
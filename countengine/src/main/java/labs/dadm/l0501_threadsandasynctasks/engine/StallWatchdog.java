@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Detects when a thread processing a queue of messages (e.g. the UI thread) is blocked.
+// The watched thread only calls onDispatchStart() and onDispatchEnd() around each message,
+// which write a couple of volatile fields and record the dispatch time in a histogram.
+// A separate watchdog thread stays parked while no message is being dispatched, and is unparked
+// when one starts. It then sleeps until that message would reach the threshold and, if it is still
+// being dispatched, captures the stack of the watched thread once and notifies the listener,
+// so the code blocking it is found while it is still blocking. As it only goes back to sleep
+// while the watched thread is idle, a busy thread wakes it up at most once per threshold.
+// The histograms are kept for a rolling window of time and are only accessed from the watched thread.
+public class StallWatchdog {
+
+    // Notified from the watchdog thread when the watched thread is blocked.
+    public interface Listener {
+        void onStall(long blockedNanos, StackTraceElement[] stack);
+    }
+
+    // Thread dispatching the messages
+    private final Thread watched;
+    // Time dispatching a message after which the thread is considered blocked (ns)
+    private final long thresholdNanos;
+    // Length of each half of the rolling window (ns)
+    private final long windowNanos;
+    // Notified when the watched thread is blocked (null for none)
+    private final Listener listener;
+
+    // Number of dispatches started, written before and after dispatchStart,
+    // so the watchdog can tell whether both fields belong to the same message
+    private volatile long dispatchCount;
+    // Time the current message started being dispatched (0 when idle)
+    private volatile long dispatchStart;
+
+    // Number of stalls detected by the watchdog thread
+    private volatile long stalls;
+    // Stack of the watched thread when the last stall was detected
+    private volatile StackTraceElement[] lastStallStack;
+
+    // Dispatch times of the current and previous halves of the window
+    private LatencyHistogram current = new LatencyHistogram();
+    private LatencyHistogram previous = new LatencyHistogram();
+    // Time the current half of the window started
+    private long windowStart;
+
+    // Thread checking the watched one (null when not started)
+    private volatile Thread watchdog;
+    private volatile boolean running;
+    // The watchdog thread is parked until a message starts being dispatched
+    private volatile boolean idle;
+
+    public StallWatchdog(Thread watched, long thresholdMs, long windowMs, Listener listener) {
+        this.watched = watched;
+        this.thresholdNanos = thresholdMs * 1_000_000L;
+        this.windowNanos = windowMs * 1_000_000L / 2;
+        this.listener = listener;
+    }
+
+    // Starts the watchdog thread.
+    public synchronized void start() {
+        if (watchdog != null) {
+            return;
+        }
+        running = true;
+        watchdog = new Thread(this::watch, "StallWatchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    // Stops the watchdog thread (without waiting for it).
+    public synchronized void stop() {
+        running = false;
+        if (watchdog != null) {
+            LockSupport.unpark(watchdog);
+            watchdog = null;
+        }
+    }
+
+    // Called from the watched thread right before dispatching a message.
+    public void onDispatchStart() {
+        final long count = dispatchCount + 1;
+        dispatchCount = count;
+        dispatchStart = System.nanoTime();
+        dispatchCount = count + 1;
+        if (idle) {
+            // Wake up the watchdog thread, which checks nothing while the thread is idle
+            idle = false;
+            LockSupport.unpark(watchdog);
+        }
+    }
+
+    // Called from the watched thread right after dispatching a message.
+    public void onDispatchEnd() {
+        final long start = dispatchStart;
+        if (start == 0) {
+            // The watchdog was installed while dispatching this message
+            return;
+        }
+        dispatchStart = 0;
+        final long now = System.nanoTime();
+        if (now - windowStart >= windowNanos) {
+            // Forget the oldest half of the window
+            final LatencyHistogram oldest = previous;
+            previous = current;
+            current = oldest;
+            current.reset();
+            windowStart = now;
+        }
+        current.record(now - start);
+    }
+
+    // Copies the dispatch times of the rolling window into the given histogram
+    // (called from the watched thread).
+    public void copyWindow(LatencyHistogram into) {
+        into.reset();
+        into.add(previous);
+        into.add(current);
+    }
+
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    public long getStalls() {
+        return stalls;
+    }
+
+    public StackTraceElement[] getLastStallStack() {
+        return lastStallStack;
+    }
+
+    private void watch() {
+        // Last dispatch reported as a stall, so each one is reported once
+        long reported = -1;
+        while (running) {
+            // Read both fields of the same dispatch (the count changes around the start time)
+            final long count = dispatchCount;
+            final long start = dispatchStart;
+            if ((count != dispatchCount) || ((count & 1) != 0)) {
+                // A message is starting to be dispatched right now
+                Thread.yield();
+                continue;
+            }
+            if (start == 0) {
+                // Nothing is being dispatched, so park until a message starts being dispatched.
+                // onDispatchStart() writes the start before reading the flag, and this thread
+                // writes the flag before reading the start, so a start is never missed
+                idle = true;
+                if (dispatchStart == 0) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                continue;
+            }
+            final long blocked = System.nanoTime() - start;
+            if ((count == reported) || (blocked < thresholdNanos)) {
+                // Sleep until this message (or the next one) could reach the threshold
+                LockSupport.parkNanos(this, (count == reported) ? thresholdNanos : thresholdNanos - blocked);
+                continue;
+            }
+
+            // Still blocked by the same message, so its stack shows what is blocking it
+            final StackTraceElement[] stack = watched.getStackTrace();
+            if ((dispatchCount != count) || (dispatchStart != start)) {
+                // The message ended while capturing the stack
+                continue;
+            }
+            reported = count;
+            lastStallStack = stack;
+            stalls++;
+            if (listener != null) {
+                listener.onStall(blocked, stack);
+            }
+        }
+    }
+}
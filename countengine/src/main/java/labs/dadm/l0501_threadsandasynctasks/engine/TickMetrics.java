@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+// Measures how regular the ticks of a count are with respect to its ideal schedule
+// (start + n * period). Jitter is how much the time between two ticks differs from the period,
+// while drift is how late the last tick is with respect to the schedule, so a loop whose
+// delays add up has a growing drift even when its jitter is small.
+// Written only by the thread running the count, read from any thread.
+public class TickMetrics {
+
+    // Expected time between two ticks (ns)
+    private final long periodNanos;
+
+    // Time of the ideal first tick minus one period (ns)
+    private long startNanos;
+    // Time of the previous tick (ns)
+    private long lastTickNanos;
+
+    // Number of ticks (including skipped ones)
+    private volatile long ticks;
+    // Number of ticks dropped to get back on schedule
+    private volatile long skippedTicks;
+    // Jitter of the last tick (ns)
+    private volatile long lastJitterNanos;
+    // Maximum jitter (ns)
+    private volatile long maxJitterNanos;
+    // Sum of the jitter of every tick (ns)
+    private volatile long totalJitterNanos;
+    // Drift of the last tick (ns)
+    private volatile long driftNanos;
+
+    public TickMetrics(long periodNanos) {
+        this.periodNanos = periodNanos;
+    }
+
+    // The schedule starts at the given time (System.nanoTime()).
+    void start(long nowNanos) {
+        startNanos = nowNanos;
+        lastTickNanos = nowNanos;
+    }
+
+    // The schedule restarts at the given time after a pause, so the pause is not counted as drift.
+    void rebase(long nowNanos) {
+        startNanos = nowNanos - ticks * periodNanos;
+        lastTickNanos = nowNanos;
+    }
+
+    // A tick happened at the given time.
+    void onTick(long nowNanos) {
+        final long jitter = Math.abs((nowNanos - lastTickNanos) - periodNanos);
+        lastTickNanos = nowNanos;
+        ticks++;
+        lastJitterNanos = jitter;
+        totalJitterNanos += jitter;
+        if (jitter > maxJitterNanos) {
+            maxJitterNanos = jitter;
+        }
+        driftNanos = nowNanos - (startNanos + ticks * periodNanos);
+    }
+
+    // The given number of ticks were skipped, so the schedule moves forward without firing them.
+    void onSkipped(long count) {
+        ticks += count;
+        skippedTicks += count;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    public long getLastJitterNanos() {
+        return lastJitterNanos;
+    }
+
+    public long getMaxJitterNanos() {
+        return maxJitterNanos;
+    }
+
+    public long getMeanJitterNanos() {
+        final long fired = ticks - skippedTicks;
+        return (fired == 0) ? 0 : totalJitterNanos / fired;
+    }
+
+    public long getDriftNanos() {
+        return driftNanos;
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Hashed timing wheel firing many timers from a single driver thread.
+// Time is divided into ticks of a fixed duration, and the wheel is an array of buckets, one per tick,
+// reused round after round. A timer due on tick n is linked into bucket n % size, so scheduling and
+// cancelling a timer are O(1), whatever the number of timers, instead of O(log n) in the heap of a
+// ScheduledThreadPoolExecutor.
+// The driver thread only wakes up for the ticks that have timers due, skipping the empty ones.
+// With a timer slack, each timer may fire up to that long after it is due: the driver wakes up
+// at the end of the window of the first timer due, and fires every timer due by then in that
+// single wakeup, so the timers of many counts are aligned instead of each waking the CPU.
+// Timers fire up to one tick (plus the slack) late, and are run on the driver thread, so they must be short.
+// Timer objects are reused (no allocation per schedule): schedule() and cancel() can be called from
+// any thread, they push the timer onto a lock-free stack that the driver drains on its next wakeup.
+// The driver parks without ticking while no timer is scheduled.
+public class TimingWheel {
+
+    // Timer that can be scheduled again once it has fired or been cancelled.
+    public abstract static class Timer {
+
+        // Not scheduled, so it can be scheduled
+        static private final int IDLE = 0;
+        // Waiting for the driver to link it into its bucket
+        static private final int PENDING = 1;
+        // Linked into its bucket
+        static private final int SCHEDULED = 2;
+        // Cancelled, waiting for the driver to unlink it
+        static private final int CANCELLED = 3;
+
+        // Current state of the timer
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+
+        // Wheel the timer was last scheduled on
+        private TimingWheel wheel;
+        // Time the timer is due, relative to the start of the wheel (ns)
+        private long deadline;
+        // Tick the timer is due on (only used by the driver)
+        private long dueTick;
+        // Bucket and neighbours while linked (only used by the driver)
+        private Bucket bucket;
+        private Timer previous;
+        private Timer next;
+        // Next timer in the stack of pending or cancelled timers
+        private Timer nextPending;
+
+        // Called from the driver thread when the timer is due.
+        protected abstract void onExpired();
+
+        // Whether the timer is waiting to fire
+        public boolean isScheduled() {
+            final int current = state.get();
+            return (current == PENDING) || (current == SCHEDULED);
+        }
+
+        // Cancels the timer, returning false if it was not waiting to fire (e.g. it is running).
+        // It cannot be scheduled again until the driver has unlinked it on its next wakeup.
+        public boolean cancel() {
+            while (true) {
+                final int current = state.get();
+                if ((current != PENDING) && (current != SCHEDULED)) {
+                    return false;
+                }
+                if (state.compareAndSet(current, CANCELLED)) {
+                    // A pending timer is discarded when its stack is drained
+                    if (current == SCHEDULED) {
+                        wheel.push(wheel.cancelled, this);
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    // Doubly linked list of the timers falling into the same tick of each round.
+    private static final class Bucket {
+
+        private Timer head;
+        private Timer tail;
+
+        void add(Timer timer) {
+            timer.bucket = this;
+            timer.previous = tail;
+            timer.next = null;
+            if (tail == null) {
+                head = timer;
+            } else {
+                tail.next = timer;
+            }
+            tail = timer;
+        }
+
+        void remove(Timer timer) {
+            if (timer.previous == null) {
+                head = timer.next;
+            } else {
+                timer.previous.next = timer.next;
+            }
+            if (timer.next == null) {
+                tail = timer.previous;
+            } else {
+                timer.next.previous = timer.previous;
+            }
+            timer.bucket = null;
+            timer.previous = null;
+            timer.next = null;
+        }
+    }
+
+    // Duration of a tick (ns)
+    private final long tickNanos;
+    // Buckets of the wheel (its size is a power of two)
+    private final Bucket[] buckets;
+    private final int mask;
+    // Thread driving the wheel
+    private final Thread driver;
+
+    // Timers waiting to be linked into their buckets
+    private final AtomicReference<Timer> pending = new AtomicReference<>();
+    // Timers waiting to be unlinked from their buckets
+    private final AtomicReference<Timer> cancelled = new AtomicReference<>();
+
+    // Time the wheel started (ns)
+    private final long startNanos;
+    // Next tick to process, as every timer due before it has fired (only used by the driver)
+    private long tick;
+    // Number of timers linked into the buckets (only used by the driver)
+    private int linked;
+
+    // Time each timer may fire after it is due, so that it fires along with others (ns)
+    private volatile long slackNanos;
+    // Last tick processed by the current wakeup of the driver (Long.MAX_VALUE while it is not waiting)
+    private volatile long plannedTick = Long.MAX_VALUE;
+
+    // The driver is parked until a timer is scheduled
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    // Number of timers currently waiting to fire, and fired so far
+    private final AtomicInteger scheduledCount = new AtomicInteger();
+    private volatile long expiredCount;
+    // Number of times the driver thread woke up
+    private volatile long wakeups;
+
+    // threadInit is run by the driver thread before any work (e.g. to lower its priority).
+    public TimingWheel(String name, long tickMs, int wheelSize, Runnable threadInit) {
+        this.tickNanos = Math.max(1, tickMs) * 1_000_000L;
+        final int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startNanos = System.nanoTime();
+        this.driver = new Thread(() -> {
+            if (threadInit != null) {
+                threadInit.run();
+            }
+            drive();
+        }, name);
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    // Schedules the timer to fire after the given delay.
+    // Returns false if the timer is already scheduled (or its cancellation is still pending).
+    public boolean schedule(Timer timer, long delayMs) {
+        return scheduleAt(timer, System.nanoTime() + Math.max(0, delayMs) * 1_000_000L);
+    }
+
+    // Schedules the timer to fire at the given time (System.nanoTime()), right away if already passed.
+    // Returns false if the timer is already scheduled (or its cancellation is still pending).
+    public boolean scheduleAt(Timer timer, long deadlineNanos) {
+        if (!running || !timer.state.compareAndSet(Timer.IDLE, Timer.PENDING)) {
+            return false;
+        }
+        timer.wheel = this;
+        timer.deadline = deadlineNanos - startNanos;
+        scheduledCount.incrementAndGet();
+        push(pending, timer);
+        // Wake up the driver if it is idle, or if it would fire the timer later than its slack allows
+        // (not when a timer schedules itself again, as the driver looks for timers before parking)
+        if ((Thread.currentThread() != driver)
+                && (idle || ((timer.deadline + slackNanos) / tickNanos < plannedTick))) {
+            LockSupport.unpark(driver);
+        }
+        return true;
+    }
+
+    // Lets each timer fire up to the given time after it is due (0, the default, fires it on its tick).
+    public void setSlackMs(long slackMs) {
+        slackNanos = Math.max(0, slackMs) * 1_000_000L;
+    }
+
+    public long getSlackMs() {
+        return slackNanos / 1_000_000L;
+    }
+
+    // Stops the driver thread (timers still scheduled will never fire).
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(driver);
+    }
+
+    // Number of timers waiting to fire
+    public int getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    // Number of timers fired so far
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    // Number of times the driver thread woke up so far (a thread sleeping between the increments
+    // of each count would wake up once per timer fired instead)
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    // Pushes the timer onto the given lock-free stack (called from any thread)
+    private void push(AtomicReference<Timer> stack, Timer timer) {
+        Timer head;
+        do {
+            head = stack.get();
+            timer.nextPending = head;
+        } while (!stack.compareAndSet(head, timer));
+    }
+
+    private void drive() {
+        while (running) {
+            if ((linked == 0) && (pending.get() == null)) {
+                waitForTimers();
+                continue;
+            }
+            unlinkCancelled();
+            linkPending();
+            if (linked == 0) {
+                // Every timer was cancelled
+                continue;
+            }
+            // Wake up once the first timer due can no longer wait, firing every timer due by then
+            final long last = firstDueTick() + slackNanos / tickNanos;
+            plannedTick = last;
+            // A timer scheduled meanwhile may have to fire earlier (it saw plannedTick or is seen here)
+            if ((pending.get() != null) || !waitForTick(last)) {
+                plannedTick = Long.MAX_VALUE;
+                continue;
+            }
+            plannedTick = Long.MAX_VALUE;
+            unlinkCancelled();
+            linkPending();
+            expireUntil(last);
+            tick = last + 1;
+        }
+    }
+
+    // Parks until a timer is scheduled, then moves the wheel to the current tick
+    // (every bucket is empty, so no tick has to be processed in between)
+    private void waitForTimers() {
+        idle = true;
+        while (running && (pending.get() == null)) {
+            LockSupport.park(this);
+            wakeups++;
+        }
+        idle = false;
+        unlinkCancelled();
+        tick = Math.max(tick, (System.nanoTime() - startNanos) / tickNanos);
+    }
+
+    // Parks until the end of the given tick (an absolute deadline, so ticks do not drift).
+    // Returns false if woken up earlier because a timer was scheduled.
+    private boolean waitForTick(long lastTick) {
+        final long deadline = startNanos + (lastTick + 1) * tickNanos;
+        long remaining;
+        while (running && ((remaining = deadline - System.nanoTime()) > 0)) {
+            LockSupport.parkNanos(this, remaining);
+            wakeups++;
+            if (pending.get() != null) {
+                return false;
+            }
+        }
+        return running;
+    }
+
+    // Returns the first tick with a timer due (there is at least one linked timer)
+    private long firstDueTick() {
+        // Timers are never due before the current tick, so the first one due within a round
+        // is found in the first bucket holding a timer due on that very tick
+        for (long t = tick; t < tick + buckets.length; t++) {
+            for (Timer timer = buckets[(int) (t & mask)].head; timer != null; timer = timer.next) {
+                if (timer.dueTick == t) {
+                    return t;
+                }
+            }
+        }
+        // Every timer is due in a later round
+        long first = Long.MAX_VALUE;
+        for (Bucket bucket : buckets) {
+            for (Timer timer = bucket.head; timer != null; timer = timer.next) {
+                first = Math.min(first, timer.dueTick);
+            }
+        }
+        return first;
+    }
+
+    private void unlinkCancelled() {
+        Timer timer = cancelled.getAndSet(null);
+        while (timer != null) {
+            final Timer next = timer.nextPending;
+            timer.nextPending = null;
+            if (timer.bucket != null) {
+                timer.bucket.remove(timer);
+                linked--;
+            }
+            scheduledCount.decrementAndGet();
+            timer.state.set(Timer.IDLE);
+            timer = next;
+        }
+    }
+
+    private void linkPending() {
+        Timer timer = pending.getAndSet(null);
+        while (timer != null) {
+            final Timer next = timer.nextPending;
+            timer.nextPending = null;
+            if (timer.state.compareAndSet(Timer.PENDING, Timer.SCHEDULED)) {
+                // Ticks from the start of the wheel, never in a bucket already visited
+                final long due = Math.max(timer.deadline / tickNanos, tick);
+                timer.dueTick = due;
+                buckets[(int) (due & mask)].add(timer);
+                linked++;
+            } else {
+                // Cancelled before being linked
+                scheduledCount.decrementAndGet();
+                timer.state.set(Timer.IDLE);
+            }
+            timer = next;
+        }
+    }
+
+    // Fires every timer due from the current tick up to the given one, in a single wakeup
+    private void expireUntil(long lastTick) {
+        // Visiting each bucket once is enough, even if the ticks span more than a round
+        final long buckets = Math.min(lastTick - tick + 1, this.buckets.length);
+        for (long t = tick; t < tick + buckets; t++) {
+            expire(this.buckets[(int) (t & mask)], lastTick);
+        }
+    }
+
+    // Fires the timers of the bucket due by the given tick, the others wait for a later round
+    private void expire(Bucket bucket, long lastTick) {
+        Timer timer = bucket.head;
+        while (timer != null) {
+            final Timer next = timer.next;
+            if (timer.dueTick > lastTick) {
+                // Due in a later round
+            } else if (timer.state.compareAndSet(Timer.SCHEDULED, Timer.IDLE)) {
+                bucket.remove(timer);
+                linked--;
+                scheduledCount.decrementAndGet();
+                expiredCount++;
+                // The timer is idle again, so it can schedule itself from onExpired()
+                try {
+                    timer.onExpired();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            // A cancelled timer is unlinked on the next tick
+            timer = next;
+        }
+    }
+}
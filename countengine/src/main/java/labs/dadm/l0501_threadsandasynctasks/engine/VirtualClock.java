@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Clock whose time only moves when a thread waits on it: sleeping advances the time instantly,
+// so a count of 100 steps of 50 ms ends right away, with 5 s of virtual time elapsed.
+// Actions can be scheduled at a virtual time (e.g. pausing, resuming or stopping a count). They
+// are run by the thread waiting on the clock when its time passes them, in order of time and then
+// of scheduling, so the same scenario always produces the same sequence of events.
+// A parked thread (e.g. a paused count) advances the time to the next action and runs it, until
+// it is unparked; with no action left it really parks, waiting for another thread to unpark it.
+// The time is shared by every thread using the clock, so a clock should be driven by one count at a time.
+public class VirtualClock implements CountClock {
+
+    // Action to run at a virtual time
+    private static final class Action implements Comparable<Action> {
+
+        final long timeNanos;
+        final long sequence;
+        final Runnable runnable;
+
+        Action(long timeNanos, long sequence, Runnable runnable) {
+            this.timeNanos = timeNanos;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Action other) {
+            if (timeNanos != other.timeNanos) {
+                return (timeNanos < other.timeNanos) ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // Current virtual time (ns), never decreasing
+    private final AtomicLong nowNanos = new AtomicLong();
+    // Actions waiting for their time (guarded by itself)
+    private final PriorityQueue<Action> actions = new PriorityQueue<>();
+    // Number of actions scheduled so far, ordering those of the same time (guarded by actions)
+    private long scheduled;
+    // Threads unparked before parking, whose next park() returns right away
+    private final ConcurrentHashMap<Thread, Boolean> permits = new ConcurrentHashMap<>();
+
+    // Runs the given action once the virtual time has advanced the given delay from now.
+    public void schedule(long delay, TimeUnit unit, Runnable action) {
+        final long time = nowNanos.get() + Math.max(0, unit.toNanos(delay));
+        synchronized (actions) {
+            actions.add(new Action(time, scheduled++, action));
+        }
+    }
+
+    // Advances the time by the given amount, running the actions due meanwhile on the calling thread.
+    public void advance(long delay, TimeUnit unit) {
+        advanceBy(Math.max(0, unit.toNanos(delay)));
+    }
+
+    // Number of actions waiting for their time
+    public int getPendingActions() {
+        synchronized (actions) {
+            return actions.size();
+        }
+    }
+
+    @Override
+    public long nanoTime() {
+        return nowNanos.get();
+    }
+
+    @Override
+    public void sleep(long nanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        advanceBy(nanos);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public void parkNanos(Object blocker, long nanos) {
+        advanceBy(nanos);
+    }
+
+    @Override
+    public void park(Object blocker) {
+        final Thread current = Thread.currentThread();
+        while ((permits.remove(current) == null) && !current.isInterrupted()) {
+            final Action next = pollNext(Long.MAX_VALUE);
+            if (next != null) {
+                run(next);
+            } else {
+                // Nothing will happen in virtual time, so wait for another thread
+                LockSupport.park(blocker);
+            }
+        }
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        if (thread != null) {
+            permits.put(thread, Boolean.TRUE);
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Advances the time by the given amount, running the actions due meanwhile,
+    // unless one of them interrupts the calling thread (e.g. stopping its count)
+    private void advanceBy(long nanos) {
+        final long target = nowNanos.get() + nanos;
+        final Thread current = Thread.currentThread();
+        Action next;
+        while (!current.isInterrupted() && ((next = pollNext(target)) != null)) {
+            run(next);
+        }
+        if (!current.isInterrupted()) {
+            moveTo(target);
+        }
+    }
+
+    // Removes the first action due at the given time or before, or returns null if there is none
+    private Action pollNext(long limitNanos) {
+        synchronized (actions) {
+            final Action next = actions.peek();
+            return ((next != null) && (next.timeNanos <= limitNanos)) ? actions.poll() : null;
+        }
+    }
+
+    private void run(Action action) {
+        moveTo(action.timeNanos);
+        action.runnable.run();
+    }
+
+    // Moves the time forward to the given time (never backwards)
+    private void moveTo(long timeNanos) {
+        long now;
+        while ((now = nowNanos.get()) < timeNanos) {
+            if (nowNanos.compareAndSet(now, timeNanos)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded pool of named threads that runs the counts, so starting a count does not pay for
+// creating and destroying a thread. Counts spend most of their time waiting, so the pool creates
+// up to poolSize threads before queueing any work, and idle threads end after keepAliveSeconds.
+// Work that does not fit in the pool nor in the queue is rejected (RejectedExecutionException).
+public class WorkerPool implements Executor {
+
+    // Runs the work
+    private final ThreadPoolExecutor executor;
+    // Number of pieces of work rejected
+    private final AtomicLong rejected = new AtomicLong();
+
+    // threadInit is run by each new thread before any work (e.g. to lower its priority).
+    public WorkerPool(String name, int poolSize, long keepAliveSeconds, int queueCapacity,
+                      Runnable threadInit) {
+        executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                keepAliveSeconds, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory(name, threadInit),
+                (runnable, pool) -> {
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("The pool " + name + " is full");
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    // Number of threads currently running some work
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    // Number of pieces of work waiting for a thread
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    // Number of pieces of work finished (approximate, as reported by ThreadPoolExecutor)
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    // Number of pieces of work rejected because the pool and its queue were full
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    // Number of threads currently in the pool
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    // Stops accepting work and lets the pending work finish.
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Creates threads named after the pool, so they can be identified when debugging.
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final Runnable threadInit;
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        NamedThreadFactory(String prefix, Runnable threadInit) {
+            this.prefix = prefix;
+            this.threadInit = threadInit;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(() -> {
+                if (threadInit != null) {
+                    threadInit.run();
+                }
+                runnable.run();
+            }, prefix + " #" + count.getAndIncrement());
+        }
+    }
+}
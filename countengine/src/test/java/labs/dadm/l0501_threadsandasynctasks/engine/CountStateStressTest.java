@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Stress test in the style of jcstress: pause(), resume() and stop() race against run() on their
+// own threads, released at once, over many trials. Every change of the state of each count is
+// observed, and only the transitions documented in CountState may occur. Each count must also end
+// (no request is lost while parked), with a progress that never goes back nor beyond the maximum.
+public class CountStateStressTest {
+
+    // Counts raced
+    static private final int TRIALS = 1_000;
+    // Steps of each count (no interval, so run() races the requests on every step)
+    static private final int MAX_COUNT = 200;
+    // Times each count is paused and resumed
+    static private final int TOGGLES = 50;
+    // Time a count has to end once stopped
+    static private final long END_TIMEOUT_MS = 5_000;
+
+    // Transitions documented in CountState
+    static private final Map<CountState, EnumSet<CountState>> TRANSITIONS = new EnumMap<>(CountState.class);
+
+    static {
+        TRANSITIONS.put(CountState.IDLE, EnumSet.of(CountState.RUNNING, CountState.PAUSED, CountState.STOPPING));
+        TRANSITIONS.put(CountState.RUNNING, EnumSet.of(CountState.PAUSED, CountState.STOPPING, CountState.FINISHED));
+        TRANSITIONS.put(CountState.PAUSED, EnumSet.of(CountState.RUNNING, CountState.STOPPING, CountState.FINISHED));
+        TRANSITIONS.put(CountState.STOPPING, EnumSet.of(CountState.FINISHED));
+        TRANSITIONS.put(CountState.FINISHED, EnumSet.noneOf(CountState.class));
+    }
+
+    @Test
+    public void pauseResumeAndStopRacingRunOnlyMakeDocumentedTransitions() throws InterruptedException {
+        for (int trial = 0; trial < TRIALS; trial++) {
+            raceCount(true);
+        }
+    }
+
+    @Test
+    public void pauseAndResumeRacingRunOnlyMakeDocumentedTransitions() throws InterruptedException {
+        for (int trial = 0; trial < TRIALS; trial++) {
+            raceCount(false);
+        }
+    }
+
+    @Test
+    public void pauseAfterTheLastStepFinishesFromPaused() {
+        // The last value is notified right before the loop ends, so pause it from there
+        final CountEngine[] engine = new CountEngine[1];
+        final TransitionChecker transitions = new TransitionChecker();
+        engine[0] = new CountEngine.Builder(new ProgressSink() {
+            @Override
+            public void onProgress(int progress) {
+                if (progress == MAX_COUNT) {
+                    assertTrue(engine[0].pause());
+                }
+            }
+
+            @Override
+            public void onFinished() {
+            }
+        }).maxCount(MAX_COUNT).intervalMs(0).stateObserver(transitions).build();
+        engine[0].run();
+
+        assertTrue("undocumented transitions: " + transitions.invalid, transitions.invalid.isEmpty());
+        assertEquals(CountState.FINISHED, engine[0].getState());
+        assertEquals(MAX_COUNT, engine[0].getCurrentProgress());
+    }
+
+    // Runs a count while other threads pause, resume and (optionally) stop it
+    private void raceCount(boolean stop) throws InterruptedException {
+        final TransitionChecker transitions = new TransitionChecker();
+        final MonotonicSink sink = new MonotonicSink();
+        final CountEngine engine = new CountEngine.Builder(sink)
+                .maxCount(MAX_COUNT)
+                .intervalMs(0)
+                .stateObserver(transitions)
+                .build();
+
+        final CountDownLatch go = new CountDownLatch(1);
+        final boolean[] stopped = new boolean[1];
+        final Thread runner = new Thread(() -> {
+            await(go);
+            engine.run();
+        });
+        final Thread toggler = new Thread(() -> {
+            await(go);
+            for (int i = 0; i < TOGGLES; i++) {
+                engine.pause();
+                spin();
+                // Always the last request, so the count is never left paused
+                engine.resume();
+                spin();
+            }
+        });
+        final Thread stopper = new Thread(() -> {
+            await(go);
+            if (stop) {
+                spin();
+                stopped[0] = engine.stop();
+            }
+        });
+        runner.start();
+        toggler.start();
+        stopper.start();
+        go.countDown();
+
+        toggler.join();
+        stopper.join();
+        runner.join(END_TIMEOUT_MS);
+        assertFalse("the count never ended", runner.isAlive());
+
+        assertTrue("undocumented transitions: " + transitions.invalid, transitions.invalid.isEmpty());
+        assertTrue("progress went back: " + sink.invalid, sink.invalid.isEmpty());
+        assertEquals(CountState.FINISHED, engine.getState());
+        assertTrue(engine.getCurrentProgress() <= MAX_COUNT);
+        // Only stop() ends a count before its maximum
+        if (!stopped[0]) {
+            assertEquals(MAX_COUNT, engine.getCurrentProgress());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Lets the other threads move for a random while, so each trial interleaves differently
+    private static void spin() {
+        final int spins = ThreadLocalRandom.current().nextInt(200);
+        for (int i = 0; i < spins; i++) {
+            Thread.yield();
+        }
+    }
+
+    // Records any transition not documented in CountState
+    private static final class TransitionChecker implements BiConsumer<CountState, CountState> {
+
+        final ConcurrentLinkedQueue<String> invalid = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void accept(CountState from, CountState to) {
+            if (!TRANSITIONS.get(from).contains(to)) {
+                invalid.add(from + " -> " + to);
+            }
+        }
+    }
+
+    // Records any value notified below the previous one or beyond the maximum count
+    private static final class MonotonicSink implements ProgressSink {
+
+        final ConcurrentLinkedQueue<String> invalid = new ConcurrentLinkedQueue<>();
+        private int last = -1;
+
+        @Override
+        public void onProgress(int progress) {
+            if ((progress < last) || (progress > MAX_COUNT)) {
+                invalid.add(last + " -> " + progress);
+            }
+            last = progress;
+        }
+
+        @Override
+        public void onFinished() {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Checks that a step of PrimeCountWork stops when its count is stopped: the thread of the count
+// leaves the step, and the chunks already being tested give up instead of running to their end.
+public class PrimeCountWorkTest {
+
+    // A single step long enough to be still running when stopped
+    static private final int NUMBERS_PER_STEP = 100_000_000;
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void stoppedStepLeavesTheRestUntested() throws InterruptedException {
+        final PrimeCountWork work = new PrimeCountWork(pool, 1, NUMBERS_PER_STEP);
+        final CancellationToken token = new CancellationToken();
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                work.runStep(0, token);
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        thread.start();
+        while (work.getNumbersTested() == 0) {
+            Thread.sleep(1);
+        }
+
+        // As CountEngine.stop() does: cancel the token, then interrupt the thread
+        token.cancel();
+        thread.interrupt();
+        thread.join();
+        assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof InterruptedException);
+
+        // The chunks give up, so the pool becomes idle with most of the step untested
+        assertTrue(pool.awaitQuiescence(10, TimeUnit.SECONDS));
+        final long tested = work.getNumbersTested();
+        assertTrue("numbers tested: " + tested, tested < NUMBERS_PER_STEP);
+        assertEquals(tested, work.getNumbersTested());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+// Checks that getProducedNanos() never pairs a value with the time of another one, while the thread
+// of the count keeps overwriting the slots read by another thread. The clock returns a time derived
+// from the value being notified, so a mismatched time is detected exactly.
+public class ProducedNanosTest {
+
+    // Steps of the count (no interval, so the slots are overwritten as fast as possible)
+    static private final int MAX_COUNT = 5_000_000;
+    // Time of the clock per step of the count
+    static private final long NANOS_PER_STEP = 1_000;
+
+    @Test
+    public void producedNanosNeverMismatchesTheValue() throws InterruptedException {
+        final CountEngine[] engine = new CountEngine[1];
+        // Only read while notifying a value, so it is the time of the value being notified
+        final CountClock clock = new CountClock() {
+            @Override
+            public long nanoTime() {
+                final CountEngine count = engine[0];
+                return (count != null) ? count.getCurrentProgress() * NANOS_PER_STEP : 0;
+            }
+
+            @Override
+            public void sleep(long nanos) throws InterruptedException {
+                CountClock.SYSTEM.sleep(nanos);
+            }
+
+            @Override
+            public void parkNanos(Object blocker, long nanos) {
+                CountClock.SYSTEM.parkNanos(blocker, nanos);
+            }
+
+            @Override
+            public void park(Object blocker) {
+                CountClock.SYSTEM.park(blocker);
+            }
+
+            @Override
+            public void unpark(Thread thread) {
+                CountClock.SYSTEM.unpark(thread);
+            }
+        };
+        engine[0] = new CountEngine.Builder(new ProgressSink() {
+            @Override
+            public void onProgress(int progress) {
+            }
+
+            @Override
+            public void onFinished() {
+            }
+        }).maxCount(MAX_COUNT).intervalMs(0).clock(clock).build();
+
+        // Reads the oldest values kept, those about to be overwritten
+        final AtomicReference<String> mismatch = new AtomicReference<>();
+        final Thread reader = new Thread(() -> {
+            long reads = 0;
+            while ((engine[0].getState() != CountState.FINISHED) && (mismatch.get() == null)) {
+                final int progress = engine[0].getCurrentProgress() - 63 + (int) (reads++ & 7);
+                final long produced = engine[0].getProducedNanos(progress);
+                if ((produced != -1) && (produced != progress * NANOS_PER_STEP)) {
+                    mismatch.set(progress + " produced at " + produced);
+                }
+            }
+        });
+        reader.start();
+        engine[0].run();
+        reader.join();
+
+        assertNull(mismatch.get());
+        assertEquals(MAX_COUNT * NANOS_PER_STEP, engine[0].getProducedNanos(MAX_COUNT));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Checks that a checkpoint torn by a crash at any byte of the record being written is recovered
+// as the last complete one, and that only the count owning a checkpoint writes it.
+public class ProgressCheckpointTest {
+
+    static private final int MAX_COUNT = 1_000;
+    static private final long INTERVAL_MS = 50;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("checkpoint", ".bin");
+        // A new file, so open() creates its layout
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void tornRecordRecoversTheLastValidOne() throws IOException {
+        // The third save goes to the second record, the fourth to the first one
+        checkTornSave(new int[]{10, 20}, 30);
+        checkTornSave(new int[]{10, 20, 30}, 40);
+    }
+
+    // Saves the given progress, then the next one torn after each number of bytes of its record
+    // (written in the order of the layout), and checks what is read back.
+    private void checkTornSave(int[] saved, int next) throws IOException {
+        final byte[] before = saveAll(saved);
+        final int[] all = new int[saved.length + 1];
+        System.arraycopy(saved, 0, all, 0, saved.length);
+        all[saved.length] = next;
+        final byte[] after = saveAll(all);
+
+        // Records alternate, so the next one overwrites the one before the last
+        final int offset = ProgressCheckpoint.HEADER_SIZE
+                + ((all.length & 1) * ProgressCheckpoint.RECORD_SIZE);
+        for (int written = 0; written <= ProgressCheckpoint.RECORD_SIZE; written++) {
+            final byte[] torn = before.clone();
+            System.arraycopy(after, offset, torn, offset, written);
+            Files.write(file.toPath(), torn);
+
+            final ProgressCheckpoint.Record record = ProgressCheckpoint.open(file).read();
+            assertNotNull("torn after " + written + " bytes", record);
+            // The checksum is written last, so only a record written up to it is valid
+            final boolean complete = !differs(after, torn, offset, offset + ProgressCheckpoint.RECORD_SIZE);
+            assertEquals("torn after " + written + " bytes",
+                    complete ? next : saved[saved.length - 1], record.progress);
+            assertEquals(MAX_COUNT, record.maxCount);
+            assertEquals(INTERVAL_MS, record.intervalMs);
+        }
+    }
+
+    @Test
+    public void bothRecordsDamagedReadsNothing() throws IOException {
+        final byte[] bytes = saveAll(new int[]{10, 20});
+        // Flip a byte of the progress of each record
+        bytes[ProgressCheckpoint.HEADER_SIZE + 8] ^= 1;
+        bytes[ProgressCheckpoint.HEADER_SIZE + ProgressCheckpoint.RECORD_SIZE + 8] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        assertNull(ProgressCheckpoint.open(file).read());
+    }
+
+    @Test
+    public void clearedCheckpointReadsNothing() throws IOException {
+        final ProgressCheckpoint checkpoint = ProgressCheckpoint.open(file);
+        checkpoint.begin(MAX_COUNT, INTERVAL_MS);
+        checkpoint.save(10);
+        checkpoint.clear();
+
+        assertNull(ProgressCheckpoint.open(file).read());
+    }
+
+    @Test
+    public void onlyOneOwnerAtATime() throws IOException {
+        final ProgressCheckpoint checkpoint = ProgressCheckpoint.open(file);
+        final Object first = new Object();
+        final Object second = new Object();
+
+        assertTrue(checkpoint.acquire(first));
+        assertTrue(checkpoint.acquire(first));
+        assertFalse(checkpoint.acquire(second));
+        // Only the owner releases it
+        checkpoint.release(second);
+        assertFalse(checkpoint.acquire(second));
+        checkpoint.release(first);
+        assertTrue(checkpoint.acquire(second));
+    }
+
+    @Test
+    public void countStartedWhileAnotherOwnsTheCheckpointDoesNotWriteIt() throws Exception {
+        final ProgressCheckpoint checkpoint = ProgressCheckpoint.open(file);
+
+        // The first count pauses at the middle, saving its progress, and keeps the checkpoint
+        final CountEngine[] first = new CountEngine[1];
+        first[0] = new CountEngine.Builder(new ProgressSink() {
+            @Override
+            public void onProgress(int progress) {
+                if (progress == MAX_COUNT / 2) {
+                    first[0].pause();
+                }
+            }
+
+            @Override
+            public void onFinished() {
+            }
+        }).maxCount(MAX_COUNT).intervalMs(0).checkpoint(checkpoint, 1).build();
+        final Thread thread = new Thread(first[0]);
+        thread.start();
+        while ((checkpoint.read() == null) || (checkpoint.read().progress != MAX_COUNT / 2)) {
+            Thread.yield();
+        }
+
+        // A second count runs to its end meanwhile, without touching the checkpoint
+        new CountEngine.Builder(new ProgressSink() {
+            @Override
+            public void onProgress(int progress) {
+            }
+
+            @Override
+            public void onFinished() {
+            }
+        }).maxCount(10).intervalMs(0).checkpoint(checkpoint, 1).build().run();
+        final ProgressCheckpoint.Record record = checkpoint.read();
+        assertNotNull(record);
+        assertEquals(MAX_COUNT / 2, record.progress);
+        assertEquals(MAX_COUNT, record.maxCount);
+
+        // The first count ends, clearing the checkpoint and handing it over
+        first[0].stop();
+        thread.join();
+        assertNull(checkpoint.read());
+        assertTrue(checkpoint.acquire(this));
+    }
+
+    // Returns the bytes of a new checkpoint file after saving each given progress in turn
+    private byte[] saveAll(int[] progress) throws IOException {
+        file.delete();
+        final ProgressCheckpoint checkpoint = ProgressCheckpoint.open(file);
+        checkpoint.begin(MAX_COUNT, INTERVAL_MS);
+        for (int value : progress) {
+            checkpoint.save(value);
+        }
+        checkpoint.force();
+        return Files.readAllBytes(file.toPath());
+    }
+
+    // Whether both arrays differ in the given range
+    private static boolean differs(byte[] a, byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (a[i] != b[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
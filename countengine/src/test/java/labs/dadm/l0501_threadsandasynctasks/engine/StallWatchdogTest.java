@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+// Checks that the watchdog thread stays parked without a timeout while nothing is being dispatched,
+// and that it still reports, once, a message dispatched for longer than the threshold.
+// The test thread plays the watched thread.
+public class StallWatchdogTest {
+
+    // Time dispatching a message after which the thread is considered blocked (ms)
+    static private final long THRESHOLD_MS = 50;
+
+    private StallWatchdog watchdog;
+    private Thread watchdogThread;
+
+    @Before
+    public void setUp() {
+        watchdog = new StallWatchdog(Thread.currentThread(), THRESHOLD_MS, 60_000, null);
+        watchdog.start();
+        watchdogThread = findThread("StallWatchdog");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        watchdog.stop();
+        watchdogThread.join();
+    }
+
+    @Test
+    public void idleThreadParksWithoutTimeout() throws InterruptedException {
+        awaitState(watchdogThread, Thread.State.WAITING);
+        // Several thresholds later it has not woken up to check anything
+        Thread.sleep(4 * THRESHOLD_MS);
+        assertEquals(Thread.State.WAITING, watchdogThread.getState());
+
+        // A short message wakes it up, and it parks again without a timeout once the message ends
+        watchdog.onDispatchStart();
+        watchdog.onDispatchEnd();
+        awaitState(watchdogThread, Thread.State.WAITING);
+        assertEquals(0, watchdog.getStalls());
+    }
+
+    @Test
+    public void blockingMessageIsReportedOnce() throws InterruptedException {
+        awaitState(watchdogThread, Thread.State.WAITING);
+
+        watchdog.onDispatchStart();
+        Thread.sleep(4 * THRESHOLD_MS);
+        watchdog.onDispatchEnd();
+        assertEquals(1, watchdog.getStalls());
+        assertNotNull(watchdog.getLastStallStack());
+        awaitState(watchdogThread, Thread.State.WAITING);
+    }
+
+    private static Thread findThread(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName())) {
+                return thread;
+            }
+        }
+        throw new AssertionError("No thread named " + name);
+    }
+
+    private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        while (thread.getState() != state) {
+            Thread.sleep(1);
+        }
+    }
+}
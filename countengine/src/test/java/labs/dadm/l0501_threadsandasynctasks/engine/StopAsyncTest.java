@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Checks that stopAsync() never waits for the thread of the count: it returns while the thread is
+// still inside its step or interval, and the callback arrives later, from that thread, once run()
+// has ended. The order of events is checked, not how long they take (see StopStallBenchmark).
+public class StopAsyncTest {
+
+    @Test
+    public void stopAsyncReturnsWhileTheStepIsStillRunning() throws InterruptedException {
+        final CountDownLatch inStep = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // The first step keeps running, ignoring interrupts, until released by the test
+        final CountWork work = (step, token) -> {
+            inStep.countDown();
+            boolean interrupted = false;
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        final CountEngine engine = new CountEngine.Builder(new NoOpSink()).work(work).build();
+        final Thread thread = new Thread(engine);
+        thread.start();
+        assertTrue(inStep.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final AtomicReference<Thread> callbackThread = new AtomicReference<>();
+        engine.stopAsync(() -> {
+            callbackThread.set(Thread.currentThread());
+            stopped.countDown();
+        });
+
+        // stopAsync() has returned while the thread is still inside its step
+        assertEquals(CountState.STOPPING, engine.getState());
+        assertTrue(thread.isAlive());
+        assertNull(callbackThread.get());
+
+        // Once the step ends, so does the count, which calls back from its own thread
+        release.countDown();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        thread.join();
+        assertSame(thread, callbackThread.get());
+        assertEquals(CountState.FINISHED, engine.getState());
+    }
+
+    @Test
+    public void stopAsyncDoesNotWaitForTheInterval() {
+        final VirtualClock clock = new VirtualClock();
+        final CountEngine engine = new CountEngine.Builder(new NoOpSink()).clock(clock).build();
+        final boolean[] called = new boolean[1];
+        final boolean[] calledBeforeReturning = new boolean[1];
+        // Requested in the middle of the 25th interval, from the thread of the count
+        clock.schedule(1_234, TimeUnit.MILLISECONDS, () -> {
+            engine.stopAsync(() -> called[0] = true);
+            calledBeforeReturning[0] = called[0];
+        });
+        engine.run();
+
+        // The callback only arrived once run() ended, and the rest of the interval was not waited
+        assertFalse(calledBeforeReturning[0]);
+        assertTrue(called[0]);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1_234), engine.getElapsedNanos());
+        assertEquals(24, engine.getCurrentProgress());
+    }
+
+    @Test
+    public void stopAsyncCallsBackRightAwayOnceEnded() {
+        final CountEngine engine = new CountEngine(3, 0, new NoOpSink());
+        engine.run();
+
+        final boolean[] called = new boolean[1];
+        engine.stopAsync(() -> called[0] = true);
+        assertTrue(called[0]);
+    }
+
+    private static class NoOpSink implements ProgressSink {
+        @Override
+        public void onProgress(int progress) {
+        }
+
+        @Override
+        public void onFinished() {
+        }
+    }
+}
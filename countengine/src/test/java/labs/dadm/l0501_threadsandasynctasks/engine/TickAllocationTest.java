@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+// Checks that the allocation-free sinks of the app (MessageSink in arg1 and ReusedRunnableSink)
+// allocate nothing on each tick, neither on the thread of the count nor on the thread handling
+// the progress (the StandInLooper standing in for the UI thread).
+// The bytes allocated by each thread are read from com.sun.management.ThreadMXBean.
+public class TickAllocationTest {
+
+    // Long enough for the allocations of starting a count to round down to 0 bytes per tick
+    static private final int TICKS = 100_000;
+    // Counts run first, so the code is compiled and the pool of messages filled
+    static private final int WARM_UP_COUNTS = 5;
+
+    private com.sun.management.ThreadMXBean threads;
+    private StandInLooper looper;
+    private final StandInUi uiSink = new StandInUi();
+    private StandInTarget target;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        looper = new StandInLooper("main", TickAllocationBenchmark.MAX_PENDING);
+        target = new StandInTarget(looper);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        looper.quit();
+    }
+
+    @Test
+    public void intArgumentAllocatesNothingPerTick() {
+        final long[] bytesPerTick = measureBytesPerTick(target.messageSink(uiSink, true));
+        assertEquals("bytes per tick on the thread of the count", 0, bytesPerTick[0]);
+        assertEquals("bytes per tick on the UI thread", 0, bytesPerTick[1]);
+    }
+
+    @Test
+    public void reusedRunnableAllocatesNothingPerTick() {
+        final long[] bytesPerTick = measureBytesPerTick(new ReusedRunnableSink(target, uiSink));
+        assertEquals("bytes per tick on the thread of the count", 0, bytesPerTick[0]);
+        assertEquals("bytes per tick on the UI thread", 0, bytesPerTick[1]);
+    }
+
+    @Test
+    public void boxedIntegerAllocatesPerTick() {
+        // Makes sure the measure sees the Integer allocated on each tick
+        final long[] bytesPerTick = measureBytesPerTick(target.messageSink(uiSink, false));
+        assertTrue("bytes per tick on the thread of the count: " + bytesPerTick[0], bytesPerTick[0] > 0);
+    }
+
+    // Returns the bytes allocated per tick by the thread of the count and by the UI thread
+    private long[] measureBytesPerTick(ProgressSink sink) {
+        for (int i = 0; i < WARM_UP_COUNTS; i++) {
+            runCount(new CountEngine(TICKS, 0, sink));
+        }
+
+        final CountEngine engine = new CountEngine(TICKS, 0, sink);
+        final long producerId = Thread.currentThread().getId();
+        final long consumerId = looper.getThread().getId();
+        final long producerBefore = threads.getThreadAllocatedBytes(producerId);
+        final long consumerBefore = threads.getThreadAllocatedBytes(consumerId);
+        runCount(engine);
+        final long producerBytes = threads.getThreadAllocatedBytes(producerId) - producerBefore;
+        final long consumerBytes = threads.getThreadAllocatedBytes(consumerId) - consumerBefore;
+        return new long[]{producerBytes / TICKS, consumerBytes / TICKS};
+    }
+
+    private void runCount(CountEngine engine) {
+        final int finished = uiSink.getFinished();
+        engine.run();
+        uiSink.awaitFinished(finished + 1);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+// Checks what the sinks the app uses to reach the UI thread (MessageSink, RunnableSink and
+// ReusedRunnableSink) deliver through each lane. The queue of the UI thread is a deque run on
+// demand: the normal lane adds to its end, and the front lane adds to its head, so the progress
+// sent through it overtakes everything already queued, as Handler.sendMessageAtFrontOfQueue() does.
+public class UiSinksTest {
+
+    // Notifications received by the UI, the end of the count being -1
+    private final List<Integer> received = new ArrayList<>();
+    private final ProgressSink uiSink = new ProgressSink() {
+        @Override
+        public void onProgress(int progress) {
+            received.add(progress);
+        }
+
+        @Override
+        public void onFinished() {
+            received.add(-1);
+        }
+    };
+
+    @Test
+    public void messagesCarryEveryValueInOrder() {
+        for (boolean unboxed : new boolean[]{true, false}) {
+            received.clear();
+            final QueueTarget target = new QueueTarget(false);
+            target.receiver = new MessageSink(target, uiSink, unboxed, false);
+            notify(target.receiver, 3);
+            target.runAll();
+            assertEquals("unboxed " + unboxed, Arrays.asList(1, 2, 3, -1), received);
+        }
+    }
+
+    @Test
+    public void messagesAtTheFrontDeliverTheLatestValueBeforeTheEnd() {
+        final QueueTarget target = new QueueTarget(true);
+        target.receiver = new MessageSink(target, uiSink, true, true);
+        notify(target.receiver, 3);
+        target.runAll();
+        // A single message was sent for the three values, and it read the latest one
+        assertEquals(Arrays.asList(3, -1), received);
+
+        received.clear();
+        target.receiver.onProgress(4);
+        target.runAll();
+        target.receiver.onProgress(5);
+        target.runAll();
+        assertEquals(Arrays.asList(4, 5), received);
+    }
+
+    @Test
+    public void runnablesCarryEveryValueInOrder() {
+        final QueueTarget target = new QueueTarget(false);
+        notify(new RunnableSink(target, uiSink, false), 3);
+        target.runAll();
+        assertEquals(Arrays.asList(1, 2, 3, -1), received);
+    }
+
+    @Test
+    public void runnablesAtTheFrontDeliverTheLatestValueBeforeTheEnd() {
+        final QueueTarget target = new QueueTarget(true);
+        notify(new RunnableSink(target, uiSink, true), 3);
+        target.runAll();
+        assertEquals(Arrays.asList(3, -1), received);
+    }
+
+    @Test
+    public void reusedRunnableReadsTheLatestValue() {
+        for (boolean front : new boolean[]{false, true}) {
+            received.clear();
+            final QueueTarget target = new QueueTarget(front);
+            notify(new ReusedRunnableSink(target, uiSink), 3);
+            target.runAll();
+            // Every Runnable queued before the end reads the latest value
+            assertEquals("front " + front, Arrays.asList(3, 3, 3, -1), received);
+        }
+    }
+
+    // Notifies the values 1..max and the end of the count, as a CountEngine does
+    private static void notify(ProgressSink sink, int max) {
+        for (int value = 1; value <= max; value++) {
+            sink.onProgress(value);
+        }
+        sink.onFinished();
+    }
+
+    // Queue of the UI thread, run on demand by the test.
+    private static final class QueueTarget implements MessageTarget, RunnableTarget {
+
+        private final Deque<Runnable> queue = new ArrayDeque<>();
+        // The progress is sent to the front of the queue
+        private final boolean front;
+        MessageSink receiver;
+
+        QueueTarget(boolean front) {
+            this.front = front;
+        }
+
+        @Override
+        public void sendProgress(int what, int arg1, Object obj) {
+            postProgress(() -> receiver.handleMessage(what, arg1, obj));
+        }
+
+        @Override
+        public void sendEnd(int what) {
+            postEnd(() -> receiver.handleMessage(what, 0, null));
+        }
+
+        @Override
+        public void postProgress(Runnable runnable) {
+            if (front) {
+                queue.addFirst(runnable);
+            } else {
+                queue.addLast(runnable);
+            }
+        }
+
+        @Override
+        public void postEnd(Runnable runnable) {
+            queue.addLast(runnable);
+        }
+
+        void runAll() {
+            while (!queue.isEmpty()) {
+                queue.pollFirst().run();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0501_threadsandasynctasks.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+// Runs the default count (100 steps of 50 ms) on a VirtualClock under every combination of pacing
+// (sleeping one interval, or fixed rate catching up or skipping ticks), start value (0 or resumed
+// from 50) and sequence of pause, resume and stop requests, scheduled at virtual times.
+// Each scenario takes a few milliseconds and its outcome is exact: progress, elapsed time,
+// notifications, and the same events in the same order on every run.
+public class VirtualClockCountTest {
+
+    // Pacing of the count (null to sleep one interval between increments)
+    static private final FixedRateTicker.Policy[] PACINGS = {
+            null, FixedRateTicker.Policy.CATCH_UP, FixedRateTicker.Policy.SKIP};
+
+    // Requests (at virtual ms), start value, expected progress and elapsed time (ms).
+    // A request due at the same time as a tick runs first, so the tick finds the count paused
+    static private final Object[][] SCENARIOS = {
+            // Runs to the end
+            {"", 0, 100, 5_000},
+            {"", 50, 100, 2_500},
+            // Stopped while sleeping
+            {"stop@1234", 0, 24, 1_234},
+            {"stop@1234", 50, 74, 1_234},
+            // Stopped before its first step
+            {"stop@0", 0, 0, 0},
+            {"stop@0", 50, 50, 0},
+            // Paused during the 21st interval and resumed 2 s later (no step lost)
+            {"pause@1010,resume@3000", 0, 100, 7_000},
+            {"pause@1010,resume@3000", 50, 100, 4_500},
+            // Paused before starting
+            {"pause@0,resume@100", 0, 100, 5_100},
+            {"pause@0,resume@100", 50, 100, 2_600},
+            // Stopped while paused
+            {"pause@1010,stop@2000", 0, 20, 2_000},
+            {"pause@1010,stop@2000", 50, 70, 2_000},
+            // Paused twice, then stopped: 20 + 9 + 6 steps
+            {"pause@1010,resume@2000,pause@2500,resume@4000,stop@4321", 0, 35, 4_321},
+            {"pause@1010,resume@2000,pause@2500,resume@4000,stop@4321", 50, 85, 4_321},
+    };
+
+    // Length of a long pause (ms)
+    static private final long PAUSE_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void everyScenarioEndsAsExpected() {
+        for (FixedRateTicker.Policy pacing : PACINGS) {
+            for (Object[] scenario : SCENARIOS) {
+                final String requests = (String) scenario[0];
+                final int startAt = (int) scenario[1];
+                final int progress = (int) scenario[2];
+                final long elapsedMs = (int) scenario[3];
+                final String name = pacing + " from " + startAt + " [" + requests + "]";
+
+                final List<String> events = new ArrayList<>();
+                final CountEngine engine = runScenario(pacing, startAt, requests, events);
+                assertEquals(name, CountState.FINISHED, engine.getState());
+                assertEquals(name, progress, engine.getCurrentProgress());
+                assertEquals(name, TimeUnit.MILLISECONDS.toNanos(elapsedMs), engine.getElapsedNanos());
+
+                final boolean stopped = requests.contains("stop");
+                // The end is only notified when reached, and a stop is immediate on the virtual clock
+                assertEquals(name, !stopped, events.contains("finished@" + elapsedMs));
+                assertEquals(name, stopped ? 0 : -1, engine.getStopLatencyNanos());
+                // The value reached is always the last one notified, unless nothing was counted
+                assertEquals(name, (progress != startAt) ? progress : -1, lastValue(events));
+
+                // The same scenario always produces the same events
+                final List<String> again = new ArrayList<>();
+                runScenario(pacing, startAt, requests, again);
+                assertEquals(name, events, again);
+            }
+        }
+    }
+
+    @Test
+    public void longPauseNeverWakesTheThread() {
+        final VirtualClock clock = new VirtualClock();
+        final CountEngine engine = new CountEngine.Builder(new ProgressSink() {
+            @Override
+            public void onProgress(int progress) {
+            }
+
+            @Override
+            public void onFinished() {
+            }
+        }).clock(clock).build();
+        assertEquals(-1, engine.getLastResumeLatencyNanos());
+
+        // Paused during the 21st interval and resumed an hour after it started (no step lost),
+        // while other actions run every second
+        clock.schedule(1_010, TimeUnit.MILLISECONDS, engine::pause);
+        for (long ms = 2_000; ms < PAUSE_MS; ms += 1_000) {
+            clock.schedule(ms, TimeUnit.MILLISECONDS, () -> {
+            });
+        }
+        clock.schedule(1_000 + PAUSE_MS, TimeUnit.MILLISECONDS, engine::resume);
+        engine.run();
+
+        // The thread stayed parked the whole hour, and ran again as soon as it was resumed
+        assertEquals(100, engine.getCurrentProgress());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5_000 + PAUSE_MS), engine.getElapsedNanos());
+        assertEquals(0, engine.getPausedWakeups());
+        assertEquals(0, engine.getLastResumeLatencyNanos());
+        assertEquals(0, engine.getMaxResumeLatencyNanos());
+    }
+
+    // Runs the count on a new VirtualClock with the given requests ("name@ms", comma-separated),
+    // adding each value and request notified ("what@ms") to the given list.
+    private static CountEngine runScenario(FixedRateTicker.Policy pacing, int startAt,
+                                           String requests, List<String> events) {
+        final VirtualClock clock = new VirtualClock();
+        final CountEngine engine = new CountEngine.Builder(new ProgressSink() {
+            @Override
+            public void onProgress(int progress) {
+                events.add(progress + "@" + toMillis(clock));
+            }
+
+            @Override
+            public void onFinished() {
+                events.add("finished@" + toMillis(clock));
+            }
+        }).fixedRate(pacing).clock(clock).startAt(startAt).build();
+
+        for (String request : requests.split(",")) {
+            if (request.isEmpty()) {
+                continue;
+            }
+            final String what = request.substring(0, request.indexOf('@'));
+            final long atMs = Long.parseLong(request.substring(request.indexOf('@') + 1));
+            clock.schedule(atMs, TimeUnit.MILLISECONDS, () -> {
+                events.add(what + "@" + toMillis(clock));
+                switch (what) {
+                    case "pause":
+                        engine.pause();
+                        break;
+                    case "resume":
+                        engine.resume();
+                        break;
+                    default:
+                        engine.stop();
+                        break;
+                }
+            });
+        }
+        engine.run();
+        assertEquals(0, clock.getPendingActions());
+        return engine;
+    }
+
+    // Last value notified, or -1 if none
+    private static int lastValue(List<String> events) {
+        for (int i = events.size() - 1; i >= 0; i--) {
+            final String event = events.get(i);
+            if (Character.isDigit(event.charAt(0))) {
+                return Integer.parseInt(event.substring(0, event.indexOf('@')));
+            }
+        }
+        return -1;
+    }
+
+    private static long toMillis(VirtualClock clock) {
+        return TimeUnit.NANOSECONDS.toMillis(clock.nanoTime());
+    }
+}